@@ -0,0 +1,139 @@
+package bguspl.set.bench;
+
+import bguspl.set.Config;
+import bguspl.set.Util;
+import bguspl.set.UtilCompletion;
+import bguspl.set.UtilImpl;
+import bguspl.set.UtilPacked;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Microbenchmarks for the Util engines (see Config::utilEngine).
+ * The cards searched by findSets are a random sample of the deck: a table of 12 cards, a deck of 81 cards, or the
+ * whole deck (featureSize ^ featureCount cards). The sample is a state of its own (Cards), so only the findSets
+ * benchmarks run once per sample size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilBenchmark {
+
+    /**
+     * The number of precomputed triples the testSet benchmarks cycle through.
+     */
+    private static final int TRIPLES = 1024;
+
+    @Param({"combinatorial", "completion", "packed"})
+    public String engine;
+
+    @Param({"4", "5", "6"})
+    public int featureCount;
+
+    private Config config;
+    private Util util;
+    private int[][] triples;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Properties properties = new Properties();
+        properties.setProperty("FeatureCount", Integer.toString(featureCount));
+        properties.setProperty("LogLevel", "OFF");
+        Logger logger = Logger.getLogger("UtilBenchmark");
+        logger.setUseParentHandlers(false);
+        config = new Config(logger, properties);
+
+        switch (engine) {
+            case "combinatorial":
+                util = new UtilImpl(config);
+                break;
+            case "completion":
+                util = new UtilCompletion(config);
+                break;
+            case "packed":
+                util = new UtilPacked(config);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown engine " + engine);
+        }
+
+        Random random = new Random(featureCount);
+
+        // about a third of the triples are legal sets
+        triples = new int[TRIPLES][];
+        for (int i = 0; i < TRIPLES; ++i) {
+            int first = random.nextInt(config.deckSize), second = random.nextInt(config.deckSize);
+            int third = i % 3 == 0 && first != second ? util.completeSet(first, second) : random.nextInt(config.deckSize);
+            triples[i] = new int[]{first, second, third};
+        }
+    }
+
+    /**
+     * The cards searched by the findSets benchmarks.
+     */
+    @State(Scope.Benchmark)
+    public static class Cards {
+
+        @Param({"12", "81", "deck"})
+        public String cards;
+
+        private List<Integer> deck;
+
+        @Setup(Level.Trial)
+        public void setup(UtilBenchmark benchmark) {
+            Config config = benchmark.config;
+            deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+            Collections.shuffle(deck, new Random(benchmark.featureCount));
+            int size = cards.equals("deck") ? config.deckSize : Math.min(Integer.parseInt(cards), config.deckSize);
+            deck = new ArrayList<>(deck.subList(0, size));
+        }
+    }
+
+    private int[] nextTriple() {
+        return triples[next++ & (TRIPLES - 1)];
+    }
+
+    @Benchmark
+    public boolean testSet() {
+        return util.testSet(nextTriple());
+    }
+
+    @Benchmark
+    public boolean testSetTriple() {
+        int[] triple = nextTriple();
+        return util.testSet(triple[0], triple[1], triple[2]);
+    }
+
+    @Benchmark
+    public List<int[]> findSetsFirst(Cards cards) {
+        return util.findSets(cards.deck, 1);
+    }
+
+    @Benchmark
+    public List<int[]> findSetsAll(Cards cards) {
+        return util.findSets(cards.deck, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public int[] cardToFeatures() {
+        return util.cardToFeatures(nextTriple()[0]);
+    }
+
+    @Benchmark
+    public int[][] cardsToFeatures() {
+        return util.cardsToFeatures(nextTriple());
+    }
+}
@@ -0,0 +1,281 @@
+package bguspl.set;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+
+/**
+ * The card images of the game window, loaded in the background.
+ * <p>
+ * The images are decoded in parallel by a few daemon threads, the cards asked for by the game (see prioritize) before
+ * the rest. Once all of them are decoded they are packed into a single sprite atlas, which is written to the cache
+ * directory (see Config::imageCache) as raw pixels: the next launches load the atlas with a single read instead of
+ * decoding the images again. Until a card is loaded, get returns null (the window draws an empty card meanwhile).
+ */
+class CardImages {
+
+    private static final int MAGIC = 0x53455441; // "SETA"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+
+    private final EventLog events;
+    private final Config config;
+    private final Path cacheFile;
+
+    /**
+     * The decoded images (null until decoded), then the sprites of the atlas.
+     */
+    private final AtomicReferenceArray<Image> images;
+
+    /**
+     * The state of each card: PENDING, DECODING or DONE (decoded, or failed to load).
+     */
+    private static final int PENDING = 0, DECODING = 1, DONE = 2;
+    private final AtomicIntegerArray states;
+
+    /**
+     * The cards asked for by the game, decoded before the others.
+     */
+    private final Queue<Integer> urgent = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The next card to decode in order, and the number of cards not yet decoded.
+     */
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final AtomicInteger remaining;
+
+    /**
+     * True once an image failed to load (only the first failure is logged: large decks have no images at all).
+     */
+    private final AtomicBoolean failed = new AtomicBoolean();
+
+    /**
+     * Starts loading the card images.
+     *
+     * @param events - the event log (for loading problems).
+     * @param config - the game configuration (the deck and the cache directory).
+     */
+    CardImages(EventLog events, Config config) {
+        this.events = events;
+        this.config = config;
+        this.cacheFile = config.imageCache.isEmpty() ? null : Paths.get(config.imageCache,
+                String.format("cards-%dx%d.atlas", config.featureSize, config.featureCount));
+        this.images = new AtomicReferenceArray<>(config.deckSize);
+        this.states = new AtomicIntegerArray(config.deckSize);
+        this.remaining = new AtomicInteger(config.deckSize);
+
+        ImageIO.setUseCache(false); // decode the small images in memory, without temporary files.
+        int loaders = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 8));
+        Thread first = new Thread(() -> {
+            long fingerprint = fingerprint();
+            if (!loadAtlas(fingerprint)) {
+                for (int i = 1; i < loaders; ++i)
+                    startLoader(i, fingerprint);
+                decodeAll(fingerprint);
+            }
+        }, "card-loader-0");
+        first.setDaemon(true);
+        first.start();
+    }
+
+    private void startLoader(int id, long fingerprint) {
+        Thread loader = new Thread(() -> decodeAll(fingerprint), "card-loader-" + id);
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * @param card - a card id.
+     * @return - the image of the card, or null if it is not loaded yet.
+     */
+    Image get(int card) {
+        return images.get(card);
+    }
+
+    /**
+     * @param card - a card id.
+     * @return - true iff the image of the card was loaded or failed to load (so get returns null for good).
+     */
+    boolean done(int card) {
+        return states.get(card) == DONE;
+    }
+
+    /**
+     * Asks to decode a card before the cards not asked for (e.g. when it is placed on the table).
+     *
+     * @param card - a card id.
+     */
+    void prioritize(int card) {
+        if (states.get(card) == PENDING) urgent.offer(card);
+    }
+
+    static URL resource(String filename) {
+        URL resource = CardImages.class.getClassLoader().getResource(filename);
+        if (resource == null)
+            throw new UncheckedIOException(new FileNotFoundException(filename));
+        return resource;
+    }
+
+    static String filename(Config config, int card) {
+        return "cards/" + UserInterfaceSwing.intInBaseToPaddedString(card, config.featureCount, config.featureSize) + ".png";
+    }
+
+    /**
+     * The decoding loop of a loader thread: decodes the urgent cards first, then the rest in order.
+     */
+    private void decodeAll(long fingerprint) {
+        for (int card = nextCard(); card >= 0; card = nextCard()) {
+            try (InputStream in = resource(filename(config, card)).openStream()) {
+                images.set(card, ImageIO.read(in));
+            } catch (IOException | UncheckedIOException e) {
+                if (failed.compareAndSet(false, true))
+                    events.log(Level.SEVERE, "cannot load the image of card " + card + " (nor maybe of others): " + e.getMessage());
+            }
+            states.set(card, DONE);
+            if (remaining.decrementAndGet() == 0) // the last card: pack and cache the atlas.
+                packAtlas(fingerprint);
+        }
+    }
+
+    private int nextCard() {
+        for (Integer card = urgent.poll(); card != null; card = urgent.poll())
+            if (states.compareAndSet(card, PENDING, DECODING)) return card;
+        for (int card = cursor.getAndIncrement(); card < config.deckSize; card = cursor.getAndIncrement())
+            if (states.compareAndSet(card, PENDING, DECODING)) return card;
+        return -1;
+    }
+
+    /**
+     * Packs the decoded images into an atlas, replaces them with its sprites and writes it to the cache.
+     */
+    private void packAtlas(long fingerprint) {
+        int width = 0, height = 0;
+        for (int card = 0; card < config.deckSize; ++card) {
+            Image image = images.get(card);
+            if (image == null) return; // an image is missing: do not cache anything.
+            width = Math.max(width, image.getWidth(null));
+            height = Math.max(height, image.getHeight(null));
+        }
+        int columns = (int) Math.ceil(Math.sqrt(config.deckSize));
+        BufferedImage atlas = new BufferedImage(columns * width, ((config.deckSize + columns - 1) / columns) * height,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = atlas.createGraphics();
+        for (int card = 0; card < config.deckSize; ++card)
+            g.drawImage(images.get(card), card % columns * width, card / columns * height, null);
+        g.dispose();
+        useAtlas(atlas, width, height, columns);
+
+        if (cacheFile == null) return;
+        try {
+            int[] pixels = (int[]) atlas.getRaster().getDataElements(0, 0, atlas.getWidth(), atlas.getHeight(), null);
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + pixels.length * Integer.BYTES);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(fingerprint).putInt(config.deckSize);
+            buffer.putInt(width).putInt(height).putInt(columns);
+            buffer.position(HEADER_SIZE);
+            buffer.asIntBuffer().put(pixels);
+            buffer.clear();
+            Files.createDirectories(cacheFile.getParent());
+            Path temporary = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) channel.write(buffer);
+            }
+            Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            events.log(Level.SEVERE, "warning: cannot write the card image cache " + cacheFile + ": " + e);
+        }
+    }
+
+    /**
+     * Loads the atlas from the cache, if it is there and was made from the current images.
+     *
+     * @return - true iff the atlas was loaded.
+     */
+    private boolean loadAtlas(long fingerprint) {
+        if (cacheFile == null || !Files.isRegularFile(cacheFile)) return false;
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) return false;
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) ;
+            buffer.flip();
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getLong() != fingerprint || buffer.getInt() != config.deckSize)
+                return false;
+            int width = buffer.getInt(), height = buffer.getInt(), columns = buffer.getInt();
+            int rows = (config.deckSize + columns - 1) / columns;
+            buffer.position(HEADER_SIZE);
+            IntBuffer pixels = buffer.asIntBuffer();
+            if (width <= 0 || height <= 0 || columns <= 0 || pixels.remaining() != columns * width * rows * height)
+                return false;
+            int[] data = new int[pixels.remaining()];
+            pixels.get(data);
+            BufferedImage atlas = new BufferedImage(columns * width, rows * height, BufferedImage.TYPE_INT_ARGB);
+            atlas.getRaster().setDataElements(0, 0, atlas.getWidth(), atlas.getHeight(), data);
+            useAtlas(atlas, width, height, columns);
+            return true;
+        } catch (IOException e) {
+            events.log(Level.SEVERE, "warning: cannot read the card image cache " + cacheFile + ": " + e);
+            return false;
+        }
+    }
+
+    private void useAtlas(BufferedImage atlas, int width, int height, int columns) {
+        for (int card = 0; card < config.deckSize; ++card) {
+            images.set(card, atlas.getSubimage(card % columns * width, card / columns * height, width, height));
+            states.set(card, DONE);
+        }
+    }
+
+    /**
+     * @return - a fingerprint of the card image resources (their sizes and modification times), so that a cached
+     * atlas is not used after the images changed.
+     */
+    private long fingerprint() {
+        long fingerprint = config.deckSize;
+        try {
+            URL first = resource(filename(config, 0));
+            Path directory = "file".equals(first.getProtocol()) ? Paths.get(first.toURI()).getParent() : null;
+            for (int card = 0; card < config.deckSize; ++card) {
+                String filename = filename(config, card);
+                if (directory != null) { // a plain stat per image (looking up each resource is much slower)
+                    BasicFileAttributes attributes = Files.readAttributes(
+                            directory.resolve(filename.substring(filename.lastIndexOf('/') + 1)), BasicFileAttributes.class);
+                    fingerprint = fingerprint * 31 + attributes.size();
+                    fingerprint = fingerprint * 31 + attributes.lastModifiedTime().toMillis();
+                } else { // e.g. in a jar
+                    URLConnection connection = resource(filename).openConnection();
+                    fingerprint = fingerprint * 31 + connection.getContentLengthLong();
+                    fingerprint = fingerprint * 31 + connection.getLastModified();
+                }
+            }
+        } catch (IOException | UncheckedIOException | URISyntaxException e) {
+            fingerprint = fingerprint * 31 - 1; // the images will fail to load anyway.
+        }
+        return fingerprint;
+    }
+}
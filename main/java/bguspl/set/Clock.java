@@ -0,0 +1,31 @@
+package bguspl.set;
+
+/**
+ * An interface for the clock all timing decisions of the game go through (turn timeouts, freezes, delays).
+ */
+public interface Clock {
+
+    /**
+     * Returns the current time of this clock.
+     *
+     * @return - the current time in milliseconds.
+     */
+    long currentTimeMillis();
+
+    /**
+     * Sleeps until this clock has advanced by the given amount of time.
+     *
+     * @param millis - the time to sleep in milliseconds (of this clock).
+     * @throws InterruptedException - if the thread was interrupted while sleeping.
+     */
+    void sleep(long millis) throws InterruptedException;
+
+    /**
+     * Parks the current thread until this clock reaches a deadline, the thread is unparked (LockSupport::unpark) or
+     * interrupted, or spuriously (callers should recheck their conditions, as with LockSupport::park).
+     *
+     * @param blocker  - the object responsible for the parking (see LockSupport::park).
+     * @param deadline - the time (of this clock) to park until, in milliseconds.
+     */
+    void parkUntil(Object blocker, long deadline);
+}
@@ -0,0 +1,55 @@
+package bguspl.set;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The implementation of the Clock interface that follows real time, optionally accelerated (or slowed down) by a
+ * constant factor.
+ */
+public class ClockImpl implements Clock {
+
+    /**
+     * How many milliseconds of this clock pass in one real millisecond.
+     */
+    private final double speed;
+
+    /**
+     * The time of this clock when it was created (the wall clock time then).
+     */
+    private final long originMillis;
+
+    /**
+     * The real (monotonic) time when this clock was created.
+     */
+    private final long originNanos;
+
+    public ClockImpl(double speed) {
+        if (speed <= 0) throw new IllegalArgumentException("clock speed must be positive: " + speed);
+        this.speed = speed;
+        this.originMillis = System.currentTimeMillis();
+        this.originNanos = System.nanoTime();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        if (speed == 1.0) return System.currentTimeMillis();
+        return originMillis + (long) ((System.nanoTime() - originNanos) * speed / 1_000_000.0);
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        if (millis <= 0) return;
+        long nanos = realNanos(millis);
+        Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+    }
+
+    @Override
+    public void parkUntil(Object blocker, long deadline) {
+        long millis = deadline - currentTimeMillis();
+        if (millis > 0) LockSupport.parkNanos(blocker, realNanos(millis));
+    }
+
+    private long realNanos(long millis) {
+        return (long) (millis * 1_000_000.0 / speed);
+    }
+}
@@ -0,0 +1,66 @@
+package bguspl.set;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A Clock whose time only advances when told to (see advance), e.g. for running simulations faster than real time
+ * or for deterministic timing tests: turn timeouts and freezes fire in simulated time, and sleeping or parked
+ * threads are woken up when the time they wait for is reached.
+ */
+public class ClockSimulated implements Clock {
+
+    /**
+     * The current time of this clock in milliseconds.
+     */
+    private volatile long now;
+
+    /**
+     * The threads currently sleeping or parked on this clock.
+     */
+    private final Set<Thread> waiters = ConcurrentHashMap.newKeySet();
+
+    public ClockSimulated(long start) {
+        this.now = start;
+    }
+
+    /**
+     * Advances the time of this clock and wakes up the threads waiting on it (they recheck their deadlines).
+     *
+     * @param millis - the time to advance by, in milliseconds.
+     */
+    public void advance(long millis) {
+        synchronized (waiters) { // advances do not overlap
+            now += millis;
+        }
+        waiters.forEach(LockSupport::unpark);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        long deadline = now + millis;
+        while (now < deadline) {
+            parkUntil(this, deadline);
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+
+    @Override
+    public void parkUntil(Object blocker, long deadline) {
+        if (now >= deadline) return;
+        Thread current = Thread.currentThread();
+        waiters.add(current);
+        try {
+            if (now < deadline) // advance may have happened before registering
+                LockSupport.park(blocker);
+        } finally {
+            waiters.remove(current);
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.nio.file.InvalidPathException;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Properties;
+import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,12 +16,55 @@ import java.util.logging.Logger;
  */
 public class Config {
 
+    /**
+     * Whether to run without a user interface, artificial delays and verbose logging, as fast as possible
+     */
+    public final boolean headless;
+
+    /**
+     * The number of games to play one after the other in headless mode
+     */
+    public final int headlessGames;
+
     /**
      * Random spin cycles for Config::randomSpin (for debugging / testing)
      */
     public final long randomSpinMin;
     public final long randomSpinMax;
 
+    /**
+     * The number of game events the asynchronous event log buffers before its overflow policy applies
+     */
+    public final int logBufferSize;
+
+    /**
+     * What the event log does with events when its buffer is full (drop them or block the game thread)
+     */
+    public final EventLog.Overflow logOverflow;
+
+    /**
+     * The time between reports of the claim latencies while a game runs, or 0 for a report at the end of each game only
+     */
+    public final long latencyReportMillis;
+
+    /**
+     * True iff the game transitions are recorded to a binary journal file (next to the log file, see JournalMapped)
+     */
+    public final boolean journal;
+
+    /**
+     * The local address (host:port) of the game server for remote players, or empty for no server (see
+     * UserInterfaceServer). With no host, the server listens on the loopback address only
+     */
+    public final String serverAddress;
+
+    /**
+     * The seed of all the randomness of the game (the dealer's shuffles and the computer players' presses). Set by
+     * RandomSeed, or chosen at random if it is not set (it is written to the journal either way). Each game of a run has
+     * a seed of its own derived from it (see gameSeed).
+     */
+    public final long randomSeed;
+
     /**
      * The number of features on the cards (e.g. shape, color etc.)
      */
@@ -36,6 +80,11 @@ public class Config {
      */
     public final int deckSize;
 
+    /**
+     * The engine used for set checks and searches (combinatorial, completion or packed)
+     */
+    public final String utilEngine;
+
     /**
      * The number of human players in the game.
      */
@@ -51,11 +100,21 @@ public class Config {
      */
     public final int players;
 
+    /**
+     * Whether to run the player and computer threads as virtual threads (if supported by the JVM)
+     */
+    public final boolean virtualThreads;
+
     /**
      * Whether to print out hints to the console or not
      */
     public final boolean hints;
 
+    /**
+     * How many game milliseconds pass in one real millisecond (greater than 1 for faster than real time games)
+     */
+    public final double clockSpeed;
+
     /**
      * The number of milliseconds until the dealer reshuffles the deck (0 show timer since last action, -1 show nothing)
      */
@@ -132,6 +191,16 @@ public class Config {
      */
     public final int fontSize;
 
+    /**
+     * The maximal number of times per second the changes of the game are drawn on the screen
+     */
+    public final int frameRate;
+
+    /**
+     * The directory of the decoded card images cache (empty for no cache)
+     */
+    public final String imageCache;
+
     /**
      * The scancodes of the keyboard input data for each player
      * Notes:
@@ -141,6 +210,13 @@ public class Config {
      */
     private final int[][] playerKeys;
 
+    /**
+     * The strategy of each computer player: a name (random, perfect or human) optionally followed by comma-separated
+     * parameters, e.g. "human,thinkMillis=800,thinkSigma=0.5,errorRate=0.05". Set by PlayerStrategy(n) for player n,
+     * or by ComputerStrategy for all the computer players.
+     */
+    private final String[] playerStrategies;
+
     /**
      * The default scan codes data (this is the same as in the default config.properties file)
      */
@@ -182,10 +258,20 @@ public class Config {
 
     public Config(Logger logger, Properties properties) {
 
+        headless = Boolean.parseBoolean(properties.getProperty("Headless", "False"));
+        headlessGames = Integer.parseInt(properties.getProperty("HeadlessGames", "1"));
+
         // logger settings
         Level logLevel = Level.parse(properties.getProperty("LogLevel", "ALL"));
+        if (headless && logLevel.intValue() < Level.WARNING.intValue())
+            logLevel = Level.WARNING; // minimal logging in headless mode
         String logFormat = properties.getProperty("LogFormat", "[%1$tT.%1$tL] [%2$-7s] %3$s%n");
         Main.setLoggerLevelAndFormat(logger, logLevel, logFormat);
+        logBufferSize = Integer.parseInt(properties.getProperty("LogBufferSize", "65536"));
+        journal = Boolean.parseBoolean(properties.getProperty("Journal", "True"));
+        serverAddress = properties.getProperty("ServerAddress", "").trim();
+        logOverflow = EventLog.Overflow.valueOf(properties.getProperty("LogOverflow", "DROP").trim().toUpperCase());
+        latencyReportMillis = (long) (Double.parseDouble(properties.getProperty("LatencyReportSeconds", "0")) * 1000.0);
 
         // for debugging
         randomSpinMin = Long.parseLong(properties.getProperty("RandomSpinMin", "0"));
@@ -193,23 +279,30 @@ public class Config {
         if (randomSpinMax < randomSpinMin || randomSpinMin < 0)
             logger.severe("invalid random spin cycles: max: " + randomSpinMax + " min: " + randomSpinMin);
 
+        String seed = properties.getProperty("RandomSeed", "").trim();
+        randomSeed = seed.isEmpty() ? new Random().nextLong() : Long.parseLong(seed);
+
         // cards settings
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
         deckSize = (int) Math.pow(featureSize, featureCount);
+        utilEngine = properties.getProperty("UtilEngine", "completion").trim().toLowerCase();
 
         // gameplay settings
         humanPlayers = Integer.parseInt(properties.getProperty("HumanPlayers", "2"));
         computerPlayers = Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
         players = humanPlayers + computerPlayers;
 
+        virtualThreads = Boolean.parseBoolean(properties.getProperty("VirtualThreads", "False"));
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
+        clockSpeed = Double.parseDouble(properties.getProperty("ClockSpeed", "1"));
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
         turnTimeoutWarningMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutWarningSeconds", "60")) * 1000.0);
         pointFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PointFreezeSeconds", "1")) * 1000.0);
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "3")) * 1000.0);
-        tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
-        endGamePauseMillies = (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
+        // no artificial delays in headless mode
+        tableDelayMillis = headless ? 0 : (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
+        endGamePauseMillies = headless ? 0 : (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
 
         // ui settings
         String[] names = properties.getProperty("PlayerNames", "Player 1, Player 2").split(",");
@@ -224,6 +317,13 @@ public class Config {
         playerCellWidth = Integer.parseInt(properties.getProperty("PlayerCellWidth", "300"));
         playerCellHeight = Integer.parseInt(properties.getProperty("PlayerCellHeight", "40"));
         fontSize = Integer.parseInt(properties.getProperty("FontSize", "40"));
+        imageCache = properties.getProperty("ImageCache", "./cache").trim();
+        frameRate = Math.max(1, Integer.parseInt(properties.getProperty("FrameRate", "60")));
+
+        // computer players strategies
+        String computerStrategy = properties.getProperty("ComputerStrategy", "random").trim();
+        playerStrategies = new String[players];
+        Arrays.setAll(playerStrategies, i -> properties.getProperty("PlayerStrategy" + (i + 1), computerStrategy).trim());
 
         // keyboard input data
         playerKeys = new int[players][rows * columns];
@@ -244,4 +344,17 @@ public class Config {
     public int[] playerKeys(int player) {
         return playerKeys[player];
     }
+
+    /**
+     * @param game - the index of a game of the run (0 for the first one, see HeadlessGames).
+     * @return - the seed of the game: randomSeed for the first game, and a seed far from the other games' seeds for the
+     * next ones (the players' seeds follow their game's seed, see Player::random).
+     */
+    public long gameSeed(int game) {
+        return randomSeed + game * 0x9E3779B97F4A7C15L; // an odd constant (2^64 / golden ratio) spreads the games apart
+    }
+
+    public String playerStrategy(int player) {
+        return playerStrategies[player];
+    }
 }
@@ -8,11 +8,29 @@ public class Env {
     public final Config config;
     public final UserInterface ui;
     public final Util util;
+    public final Clock clock;
+    public final EventLog events;
+    public final Journal journal;
 
-    public Env(Logger logger, Config config, UserInterface ui, Util util) {
+    public Env(Logger logger, Config config, UserInterface ui, Util util, Clock clock, EventLog events, Journal journal) {
         this.logger = logger;
         this.config = config;
         this.ui = ui;
         this.util = util;
+        this.clock = clock;
+        this.events = events;
+        this.journal = journal;
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, Clock clock, EventLog events) {
+        this(logger, config, ui, util, clock, events, Journal.NONE);
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, Clock clock) {
+        this(logger, config, ui, util, clock, new EventLog(logger));
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util) {
+        this(logger, config, ui, util, new ClockImpl(1.0));
     }
 }
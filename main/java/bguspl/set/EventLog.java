@@ -0,0 +1,316 @@
+package bguspl.set;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * An asynchronous log of game events. The game threads only check the level of an event and copy its numeric
+ * arguments into a bounded ring buffer; a background writer thread formats the messages, hands them to the logger and
+ * flushes the logger's handlers once per batch. When the buffer is full the overflow policy decides whether events
+ * are dropped (and counted) or the game thread waits for room.
+ */
+public class EventLog {
+
+    /**
+     * The game events, with their log level and message format (one %d per numeric argument).
+     */
+    public enum Event {
+        PLACE_CARD(Level.FINE, "placing card %d in slot %d"),
+        REMOVE_CARD(Level.FINE, "removing card from slot %d"),
+        PLACE_TOKEN(Level.FINE, "player %d placing token on slot %d"),
+        REMOVE_TOKENS(Level.FINE, "removing all tokens"),
+        REMOVE_SLOT_TOKENS(Level.FINE, "removing tokens from slot %d"),
+        REMOVE_TOKEN(Level.FINE, "removing player %d token from slot %d"),
+        COUNTDOWN(Level.FINEST, "updating countdown to %d"),
+        ELAPSED(Level.FINEST, "updating elapsed time to %d"),
+        FREEZE(Level.FINER, "setting player %d freeze to %d"),
+        SCORE(Level.INFO, "setting player %d score to %d"),
+        KEY_PRESSED(Level.FINE, "key %d was pressed by player %d"),
+        CLAIM(Level.FINE, "player %d claims a set"),
+        CLAIM_DEQUEUED(Level.FINE, "player %d claim removed from the queue"),
+        STALE_CLAIM(Level.FINE, "no set no penalty for player %d"),
+        POINT(Level.INFO, "point! player %d cards %d %d %d"),
+        PENALTY(Level.INFO, "penalty! player %d cards %d %d %d"),
+        RESHUFFLE(Level.INFO, "time reset!!"),
+        PLAYER_BACK(Level.FINE, "player %d back to work"),
+        AI_SLEEP(Level.FINE, "ai sleep %d"),
+        AI_BACK(Level.FINE, "ai back to work! %d"),
+        NO_SETS(Level.FINE, "no sets on table"),
+        /** A free-form message (for rare events only, the text is built by the caller). */
+        TEXT(Level.SEVERE, "%s");
+
+        private final Level level;
+        private final String format;
+        private final int arity;
+
+        Event(Level level, String format) {
+            this.level = level;
+            this.format = format;
+            this.arity = format.split("%d", -1).length - 1;
+        }
+    }
+
+    /**
+     * What to do with an event when the ring buffer is full.
+     */
+    public enum Overflow {
+        /** Drop the event (the number of dropped events is logged by the writer). */
+        DROP,
+        /** Wait until the writer made room for the event. */
+        BLOCK
+    }
+
+    /**
+     * The number of numeric arguments stored per event.
+     */
+    private static final int ARGS = 4;
+
+    /**
+     * How long the writer waits for more events after it was woken up, to write them in one batch.
+     */
+    private static final long WRITER_BATCH_NANOS = 10_000_000;
+
+    private final Logger logger;
+    private final Overflow overflow;
+
+    /**
+     * The lowest level (Level::intValue) that is logged. Events below it are skipped before anything is recorded.
+     */
+    private final int minLevel;
+
+    /**
+     * The ring buffer (null when logging synchronously): the event, level, time, numeric arguments and text of each
+     * entry, and the sequence number published in each entry (written last, once the entry is complete).
+     */
+    private final int capacity;
+    private final Event[] events;
+    private final Level[] levels;
+    private final long[] times;
+    private final long[] args;
+    private final String[] texts;
+    private final AtomicLongArray published;
+
+    /**
+     * The next sequence number to be claimed by a producer.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The next sequence number to be consumed by the writer.
+     */
+    private volatile long tail;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * True iff the writer is about to park (or parked) until an event is logged: producers unpark it after claiming a
+     * sequence number. The writer checks head after setting it and the producers check it after changing head, so one
+     * of them always sees the other and no wake-up is lost.
+     */
+    private volatile boolean writerParked;
+
+    /**
+     * Creates an event log that formats and logs every event synchronously, on the calling thread.
+     *
+     * @param logger - the logger to log the events to.
+     */
+    public EventLog(Logger logger) {
+        this.logger = logger;
+        this.overflow = Overflow.DROP;
+        this.minLevel = minLevel(logger);
+        this.capacity = 0;
+        this.events = null;
+        this.levels = null;
+        this.times = null;
+        this.args = null;
+        this.texts = null;
+        this.published = null;
+        this.writer = null;
+    }
+
+    /**
+     * Creates an asynchronous event log and starts its writer thread.
+     *
+     * @param logger   - the logger to log the events to (its level must already be set).
+     * @param capacity - the number of events the ring buffer holds (rounded up to a power of two).
+     * @param overflow - what to do with events when the ring buffer is full.
+     */
+    public EventLog(Logger logger, int capacity, Overflow overflow) {
+        this.logger = logger;
+        this.overflow = overflow;
+        this.minLevel = minLevel(logger);
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.events = new Event[this.capacity];
+        this.levels = new Level[this.capacity];
+        this.times = new long[this.capacity];
+        this.args = new long[this.capacity * ARGS];
+        this.texts = new String[this.capacity];
+        this.published = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; ++i)
+            published.set(i, -1);
+        this.writer = new Thread(this::write, "event-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    private static int minLevel(Logger logger) {
+        Level level = logger.getLevel();
+        return level == null ? Level.INFO.intValue() : level.intValue();
+    }
+
+    /**
+     * @param event - the event.
+     * @return - true iff the event would be logged (so that rare callers can skip preparing arguments).
+     */
+    public boolean isLoggable(Event event) {
+        return event.level.intValue() >= minLevel && minLevel != Level.OFF.intValue();
+    }
+
+    public void log(Event event) {
+        log(event, 0, 0, 0, 0);
+    }
+
+    public void log(Event event, long a) {
+        log(event, a, 0, 0, 0);
+    }
+
+    public void log(Event event, long a, long b) {
+        log(event, a, b, 0, 0);
+    }
+
+    /**
+     * Logs an event with up to four numeric arguments (the ones beyond the event's arity are ignored).
+     */
+    public void log(Event event, long a, long b, long c, long d) {
+        if (!isLoggable(event)) return;
+        record(event, event.level, a, b, c, d, null);
+    }
+
+    /**
+     * Logs a free-form message (for rare events; the message is built by the caller even if it is not logged, unless
+     * the caller checks isLoggable(Event.TEXT) or uses a lower level).
+     *
+     * @param level - the log level of the message.
+     * @param text  - the message.
+     */
+    public void log(Level level, String text) {
+        if (level.intValue() < minLevel || minLevel == Level.OFF.intValue()) return;
+        record(Event.TEXT, level, 0, 0, 0, 0, text);
+    }
+
+    private void record(Event event, Level level, long a, long b, long c, long d, String text) {
+        long time = System.currentTimeMillis();
+        if (writer == null) {
+            publish(event, level, time, new long[]{a, b, c, d}, 0, text);
+            return;
+        }
+
+        // claim a sequence number, if there is room for it
+        long sequence;
+        while (true) {
+            sequence = head.get();
+            if (sequence - tail >= capacity) {
+                if (overflow == Overflow.DROP || closed) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                LockSupport.unpark(writer);
+                Thread.yield();
+            } else if (head.compareAndSet(sequence, sequence + 1))
+                break;
+        }
+
+        int index = (int) (sequence & (capacity - 1));
+        events[index] = event;
+        levels[index] = level;
+        times[index] = time;
+        args[index * ARGS] = a;
+        args[index * ARGS + 1] = b;
+        args[index * ARGS + 2] = c;
+        args[index * ARGS + 3] = d;
+        texts[index] = text;
+        published.lazySet(index, sequence); // makes the entry visible to the writer
+        if (writerParked || sequence - tail == capacity >> 1) LockSupport.unpark(writer); // idle, or half full: do not wait for the batch
+    }
+
+    /**
+     * The main loop of the writer thread: drains the published events in batches. When there are no events it parks
+     * with no timeout (an idle game costs no wake-ups), and once woken up it waits a little for more events to batch.
+     */
+    private void write() {
+        while (true) {
+            int batch = drain();
+            if (batch > 0) flush();
+            else if (closed) break;
+            else if (head.get() != tail) Thread.yield(); // claimed, but not published yet.
+            else {
+                writerParked = true;
+                if (head.get() == tail && !closed) { // see writerParked
+                    LockSupport.park(this);
+                    writerParked = false;
+                    if (!closed) LockSupport.parkNanos(this, WRITER_BATCH_NANOS);
+                }
+                writerParked = false;
+            }
+        }
+    }
+
+    private int drain() {
+        int batch = 0;
+        long sequence = tail;
+        int index = (int) (sequence & (capacity - 1));
+        while (published.get(index) == sequence) {
+            publish(events[index], levels[index], times[index], args, index * ARGS, texts[index]);
+            texts[index] = null;
+            tail = ++sequence;
+            index = (int) (sequence & (capacity - 1));
+            batch++;
+        }
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            logger.warning("event log buffer overflow: " + lost + " events were dropped");
+            batch++;
+        }
+        return batch;
+    }
+
+    private void publish(Event event, Level level, long time, long[] values, int offset, String text) {
+        String message;
+        if (event == Event.TEXT) message = text;
+        else {
+            Object[] arguments = new Object[event.arity];
+            for (int i = 0; i < event.arity; ++i)
+                arguments[i] = values[offset + i];
+            message = String.format(event.format, arguments);
+        }
+        LogRecord record = new LogRecord(level, message);
+        record.setInstant(Instant.ofEpochMilli(time));
+        record.setLoggerName(logger.getName());
+        logger.log(record);
+    }
+
+    private void flush() {
+        for (Handler h : logger.getHandlers()) h.flush();
+    }
+
+    /**
+     * Writes out all the events logged so far and stops the writer thread.
+     */
+    public void close() {
+        closed = true;
+        if (writer == null) return;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
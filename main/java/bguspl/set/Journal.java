@@ -0,0 +1,99 @@
+package bguspl.set;
+
+/**
+ * An interface for the journal of the game: every state transition is recorded as a fixed-size record (see
+ * JournalMapped for the file format and JournalReader for reading it back).
+ */
+public interface Journal {
+
+    /**
+     * The types of the records, with the meaning of their fields.
+     */
+    enum Type {
+        /** A game starts (a, b = the high and low 32 bits of the game's seed, see Config::gameSeed). */
+        GAME_START,
+        /** The dealer placed a card on the table (slot, a = card). */
+        DEAL,
+        /** The dealer removed a card from the table (slot, a = card). */
+        REMOVE,
+        /** A player placed a token (player, slot, a = the card in the slot). */
+        TOKEN,
+        /** A token of a player was removed (player, slot, a = the card in the slot or -1). */
+        UNTOKEN,
+        /** A player claimed a set (player). */
+        CLAIM,
+        /** The dealer gave a player a point (player, a b c = the cards of the set, the first three if it is larger). */
+        POINT,
+        /** The dealer penalized a player (player, a b c = the cards claimed, the first three if there are more). */
+        PENALTY,
+        /** The dealer dismissed a claim whose cards were already taken (player). */
+        STALE,
+        /** The dealer returned the cards on the table to the deck (nothing). */
+        RESHUFFLE,
+        /** A player won the game (player, a = its score). */
+        WINNER,
+        /** The game ended (nothing). */
+        GAME_END;
+
+        private static final Type[] TYPES = values();
+
+        /**
+         * @return - the code of the type in the journal file (never 0, so a zeroed record is known to be unwritten).
+         */
+        public byte code() {
+            return (byte) (ordinal() + 1);
+        }
+
+        /**
+         * @param code - a code read from a journal file.
+         * @return - the type of the code, or null if it is not a valid code.
+         */
+        public static Type of(int code) {
+            return code >= 1 && code <= TYPES.length ? TYPES[code - 1] : null;
+        }
+    }
+
+    /**
+     * A journal that records nothing.
+     */
+    Journal NONE = new Journal() {
+        @Override
+        public void record(Type type, int player, int slot, int a, int b, int c) {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    /**
+     * Records a state transition.
+     *
+     * @param type   - the type of the transition.
+     * @param player - the player involved (-1 if none).
+     * @param slot   - the slot involved (-1 if none).
+     * @param a      - the first card (or value) involved (-1 if none, see Type).
+     * @param b      - the second card involved (-1 if none).
+     * @param c      - the third card involved (-1 if none).
+     */
+    void record(Type type, int player, int slot, int a, int b, int c);
+
+    /**
+     * Records a state transition involving at most one card.
+     */
+    default void record(Type type, int player, int slot, int a) {
+        record(type, player, slot, a, -1, -1);
+    }
+
+    /**
+     * Records a state transition involving no slot or card.
+     */
+    default void record(Type type, int player) {
+        record(type, player, -1, -1, -1, -1);
+    }
+
+    /**
+     * Writes the journal out and closes it (later records are ignored).
+     */
+    void close();
+}
@@ -0,0 +1,154 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A journal kept in a memory-mapped, append-only file. Recording a transition claims the next record with a single
+ * atomic increment and writes it straight into the mapped memory: there is no lock, no formatting and no system call
+ * on the game threads (except once per segment, when the next segment of the file is mapped).
+ * <p>
+ * The file starts with a header of HEADER_SIZE bytes (the Config parameters of the game) followed by records of
+ * RECORD_SIZE bytes, all big-endian:
+ * <pre>
+ * header: int magic, short version, short record size, long start time (epoch millis), long record count,
+ *         int players, humanPlayers, featureCount, featureSize, deckSize, tableSize, rows, columns,
+ *         long turnTimeoutMillis, turnTimeoutWarningMillis, pointFreezeMillis, penaltyFreezeMillis, tableDelayMillis,
+ *         double clockSpeed, long randomSeed, zeros up to HEADER_SIZE.
+ * record: long time (Clock millis), byte type (Journal.Type::code), byte 0, short player, short slot, short 0, int a,
+ *         int b, int c, int 0.
+ * </pre>
+ * The record count is written when the journal is closed. The journal of a game that did not close its journal
+ * (e.g. it was killed) is still readable: the records end at the first record whose type is 0.
+ */
+public class JournalMapped implements Journal {
+
+    static final int MAGIC = 0x5345544a; // "SETJ"
+    static final short VERSION = 3; // 3: 32-byte records with a short player (up to Short.MAX_VALUE players)
+    static final int HEADER_SIZE = 128;
+    static final int RECORD_SIZE = 32;
+    static final int COUNT_OFFSET = 16;
+
+    /**
+     * The file is mapped in segments of 2^SEGMENT_SHIFT records.
+     */
+    static final int SEGMENT_SHIFT = 18;
+    static final int SEGMENT_RECORDS = 1 << SEGMENT_SHIFT;
+
+    private final Clock clock;
+    private final FileChannel channel;
+
+    /**
+     * The mapped segments (the array is replaced, under the journal monitor, when a segment is mapped).
+     */
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    /**
+     * The number of records claimed so far.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * Creates the journal file (replacing any existing one) and writes its header.
+     *
+     * @param file   - the journal file.
+     * @param config - the configuration of the game (written to the header).
+     * @param clock  - the clock the records are timed by.
+     * @throws UncheckedIOException     - if the file cannot be created.
+     * @throws IllegalArgumentException - if the game has more players than a record can hold.
+     */
+    public JournalMapped(Path file, Config config, Clock clock) {
+        if (config.players > Short.MAX_VALUE)
+            throw new IllegalArgumentException("a journal holds up to " + Short.MAX_VALUE + " players, not " + config.players);
+        this.clock = clock;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.write(header(config), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ByteBuffer header(Config config) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE);
+        header.putLong(System.currentTimeMillis()).putLong(0);
+        header.putInt(config.players).putInt(config.humanPlayers).putInt(config.featureCount).putInt(config.featureSize);
+        header.putInt(config.deckSize).putInt(config.tableSize).putInt(config.rows).putInt(config.columns);
+        header.putLong(config.turnTimeoutMillis).putLong(config.turnTimeoutWarningMillis);
+        header.putLong(config.pointFreezeMillis).putLong(config.penaltyFreezeMillis).putLong(config.tableDelayMillis);
+        header.putDouble(config.clockSpeed).putLong(config.randomSeed);
+        header.clear();
+        return header;
+    }
+
+    @Override
+    public void record(Type type, int player, int slot, int a, int b, int c) {
+        if (closed) return;
+        long index = count.getAndIncrement();
+        ByteBuffer segment = segment((int) (index >>> SEGMENT_SHIFT));
+        if (segment == null) return;
+        int offset = (int) (index & (SEGMENT_RECORDS - 1)) * RECORD_SIZE;
+        segment.putLong(offset, clock.currentTimeMillis());
+        segment.putShort(offset + 10, (short) player);
+        segment.putShort(offset + 12, (short) slot);
+        segment.putInt(offset + 16, a);
+        segment.putInt(offset + 20, b);
+        segment.putInt(offset + 24, c);
+        segment.put(offset + 8, type.code()); // the type is written last: a record with a type is complete.
+    }
+
+    private ByteBuffer segment(int segment) {
+        MappedByteBuffer[] mapped = segments;
+        if (segment < mapped.length) return mapped[segment];
+        return map(segment);
+    }
+
+    private synchronized ByteBuffer map(int segment) {
+        MappedByteBuffer[] mapped = segments;
+        if (segment >= mapped.length) {
+            mapped = Arrays.copyOf(mapped, segment + 1);
+            try {
+                for (int i = segments.length; i <= segment; ++i) {
+                    long bytes = (long) SEGMENT_RECORDS * RECORD_SIZE;
+                    mapped[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + i * bytes, bytes);
+                }
+            } catch (IOException e) {
+                closed = true; // a journal with a hole in it is worse than a truncated one.
+                return null;
+            }
+            segments = mapped;
+        }
+        return mapped[segment];
+    }
+
+    /**
+     * Writes the record count to the header, forces the mapped records to the file and closes it. Should be called
+     * once the game threads stopped recording.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed && !channel.isOpen()) return;
+        closed = true;
+        try {
+            for (MappedByteBuffer segment : segments)
+                segment.force();
+            ByteBuffer records = ByteBuffer.allocate(Long.BYTES).putLong(0, count.get());
+            channel.write(records, COUNT_OFFSET);
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Properties;
+
+import static bguspl.set.JournalMapped.*;
+
+/**
+ * Reads a journal file written by JournalMapped (see there for the format). The records are accessed by their index,
+ * straight from the mapped file.
+ */
+public class JournalReader {
+
+    /**
+     * The time the journal was created (epoch millis).
+     */
+    public final long startMillis;
+
+    /**
+     * The Config parameters in the header of the journal.
+     */
+    public final int players;
+    public final int humanPlayers;
+    public final int featureCount;
+    public final int featureSize;
+    public final int deckSize;
+    public final int tableSize;
+    public final int rows;
+    public final int columns;
+    public final long turnTimeoutMillis;
+    public final long turnTimeoutWarningMillis;
+    public final long pointFreezeMillis;
+    public final long penaltyFreezeMillis;
+    public final long tableDelayMillis;
+    public final double clockSpeed;
+    public final long randomSeed;
+
+    /**
+     * The number of (complete) records in the journal.
+     */
+    public final long records;
+
+    private final ByteBuffer[] segments;
+
+    /**
+     * Opens a journal file and reads its header.
+     *
+     * @param file - the journal file.
+     * @throws IOException - if the file cannot be read or is not a journal.
+     */
+    public JournalReader(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (channel.read(header, 0) < HEADER_SIZE || header.getInt(0) != MAGIC)
+                throw new IOException(file + " is not a journal file");
+            header.flip().position(4);
+            short version = header.getShort();
+            short recordSize = header.getShort();
+            if (version != VERSION || recordSize != RECORD_SIZE)
+                throw new IOException(file + " has an unsupported journal version " + version);
+            startMillis = header.getLong();
+            long count = header.getLong();
+            players = header.getInt();
+            humanPlayers = header.getInt();
+            featureCount = header.getInt();
+            featureSize = header.getInt();
+            deckSize = header.getInt();
+            tableSize = header.getInt();
+            rows = header.getInt();
+            columns = header.getInt();
+            turnTimeoutMillis = header.getLong();
+            turnTimeoutWarningMillis = header.getLong();
+            pointFreezeMillis = header.getLong();
+            penaltyFreezeMillis = header.getLong();
+            tableDelayMillis = header.getLong();
+            clockSpeed = header.getDouble();
+            randomSeed = header.getLong();
+
+            long inFile = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+            if (count == 0 || count > inFile) count = inFile; // the journal was not closed.
+            int segmentCount = (int) ((count + SEGMENT_RECORDS - 1) >>> SEGMENT_SHIFT);
+            segments = new ByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; ++i) {
+                long first = (long) i << SEGMENT_SHIFT;
+                long size = Math.min(SEGMENT_RECORDS, count - first) * RECORD_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * RECORD_SIZE, size);
+            }
+            records = complete(count);
+        }
+    }
+
+    /**
+     * Returns the configuration properties of the recorded game (see Config), e.g. to replay it or to run it again
+     * with the same seed.
+     *
+     * @return - a new properties object with the Config parameters in the header.
+     */
+    public Properties properties() {
+        Properties properties = new Properties();
+        properties.setProperty("HumanPlayers", Integer.toString(humanPlayers));
+        properties.setProperty("ComputerPlayers", Integer.toString(players - humanPlayers));
+        properties.setProperty("FeatureCount", Integer.toString(featureCount));
+        properties.setProperty("FeatureSize", Integer.toString(featureSize));
+        properties.setProperty("Rows", Integer.toString(rows));
+        properties.setProperty("Columns", Integer.toString(columns));
+        properties.setProperty("TurnTimeoutSeconds", Double.toString(turnTimeoutMillis / 1000.0));
+        properties.setProperty("TurnTimeoutWarningSeconds", Double.toString(turnTimeoutWarningMillis / 1000.0));
+        properties.setProperty("PointFreezeSeconds", Double.toString(pointFreezeMillis / 1000.0));
+        properties.setProperty("PenaltyFreezeSeconds", Double.toString(penaltyFreezeMillis / 1000.0));
+        properties.setProperty("TableDelaySeconds", Double.toString(tableDelayMillis / 1000.0));
+        properties.setProperty("ClockSpeed", Double.toString(clockSpeed));
+        properties.setProperty("RandomSeed", Long.toString(randomSeed));
+        return properties;
+    }
+
+    /**
+     * @return - the number of records before the first unwritten one (whose type is 0).
+     */
+    private long complete(long count) {
+        for (long i = 0; i < count; ++i)
+            if (type(i) == null) return i;
+        return count;
+    }
+
+    private ByteBuffer segment(long record) {
+        return segments[(int) (record >>> SEGMENT_SHIFT)];
+    }
+
+    private int offset(long record) {
+        return (int) (record & (SEGMENT_RECORDS - 1)) * RECORD_SIZE;
+    }
+
+    /**
+     * @param record - the index of a record.
+     * @return - the time of the record (Clock millis).
+     */
+    public long time(long record) {
+        return segment(record).getLong(offset(record));
+    }
+
+    /**
+     * @param record - the index of a record.
+     * @return - the type of the record (null if the record was not written).
+     */
+    public Journal.Type type(long record) {
+        return Journal.Type.of(segment(record).get(offset(record) + 8));
+    }
+
+    public int player(long record) {
+        return segment(record).getShort(offset(record) + 10);
+    }
+
+    public int slot(long record) {
+        return segment(record).getShort(offset(record) + 12);
+    }
+
+    public int a(long record) {
+        return segment(record).getInt(offset(record) + 16);
+    }
+
+    public int b(long record) {
+        return segment(record).getInt(offset(record) + 20);
+    }
+
+    public int c(long record) {
+        return segment(record).getInt(offset(record) + 24);
+    }
+
+    /**
+     * @param record - the index of a GAME_START record.
+     * @return - the seed of the game.
+     */
+    public long seed(long record) {
+        return (long) a(record) << 32 | b(record) & 0xffffffffL;
+    }
+
+    /**
+     * @param record - the index of a record.
+     * @return - a line of text describing the record.
+     */
+    public String toString(long record) {
+        StringBuilder sb = new StringBuilder().append(time(record)).append(' ').append(type(record));
+        if (type(record) == Journal.Type.GAME_START) return sb.append(" seed ").append(seed(record)).toString();
+        if (player(record) >= 0) sb.append(" player ").append(player(record) + 1);
+        if (slot(record) >= 0) sb.append(" slot ").append(slot(record));
+        if (a(record) >= 0) sb.append(' ').append(a(record));
+        if (b(record) >= 0) sb.append(' ').append(b(record));
+        if (c(record) >= 0) sb.append(' ').append(c(record));
+        return sb.toString();
+    }
+
+    /**
+     * Prints the header and the records of a journal file as text.
+     *
+     * @param args - the journal file.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: java bguspl.set.JournalReader <journal file>");
+            System.exit(1);
+        }
+        JournalReader journal = new JournalReader(Paths.get(args[0]));
+        System.out.printf("journal started %s: %d players (%d human), %d cards of %d features x %d, %d slots (%dx%d)%n",
+                new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(journal.startMillis)), journal.players,
+                journal.humanPlayers, journal.deckSize, journal.featureCount, journal.featureSize, journal.tableSize,
+                journal.rows, journal.columns);
+        System.out.printf("turn timeout %d ms (warning %d ms), freeze %d ms (point) %d ms (penalty), table delay %d ms, clock speed %s, random seed %d%n",
+                journal.turnTimeoutMillis, journal.turnTimeoutWarningMillis, journal.pointFreezeMillis,
+                journal.penaltyFreezeMillis, journal.tableDelayMillis, journal.clockSpeed, journal.randomSeed);
+        for (long i = 0; i < journal.records; ++i)
+            System.out.println(journal.toString(i));
+    }
+}
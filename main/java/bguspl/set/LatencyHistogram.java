@@ -0,0 +1,92 @@
+package bguspl.set;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds with log-linear buckets: values below 16ns are counted exactly,
+ * larger values in 16 buckets per power of two (i.e. with a relative error below 1/16). Recording is a few atomic
+ * increments and may be done concurrently by any number of threads.
+ */
+public class LatencyHistogram {
+
+    /**
+     * The number of bits of precision kept for each value (2^SUB_BITS buckets per power of two).
+     */
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray((Long.SIZE - SUB_BITS + 1) * SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value); // the index of the highest bit
+        int shift = magnitude - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return - the highest value counted in a bucket.
+     */
+    private static long bucketMax(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long low = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return low + (1L << shift) - 1;
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos - the latency in nanoseconds (negative values are counted as 0).
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets.incrementAndGet(bucket(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+        long previous = max.get();
+        while (nanos > previous && !max.compareAndSet(previous, nanos))
+            previous = max.get();
+    }
+
+    /**
+     * @return - the number of latencies recorded.
+     */
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * Returns an upper bound (within the bucket precision) of the latency below which a fraction of the recorded
+     * latencies fall.
+     *
+     * @param fraction - the fraction (e.g. 0.99 for the 99th percentile).
+     * @return - the percentile in nanoseconds (0 if nothing was recorded).
+     */
+    public long percentile(double fraction) {
+        long total = count.get();
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); ++i) {
+            seen += buckets.get(i);
+            if (seen >= rank) return Math.min(bucketMax(i), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * @return - a one line summary of the recorded latencies, in microseconds.
+     */
+    public String summary() {
+        long total = count.get();
+        double mean = total == 0 ? 0 : (double) sum.get() / total;
+        return String.format("count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus", total,
+                mean / 1000.0, percentile(0.5) / 1000.0, percentile(0.9) / 1000.0, percentile(0.99) / 1000.0,
+                percentile(0.999) / 1000.0, max.get() / 1000.0);
+    }
+}
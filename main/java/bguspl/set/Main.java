@@ -4,8 +4,13 @@ import bguspl.set.ex.Dealer;
 import bguspl.set.ex.Player;
 import bguspl.set.ex.Table;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -23,6 +28,11 @@ public class Main {
     private static boolean xButtonPressed = false;
     private static Logger logger;
 
+    /**
+     * The name of the log and journal files of this run (the time the game started).
+     */
+    private static final String runName = new SimpleDateFormat("M-d_HH-mm-ss").format(Calendar.getInstance().getTime());
+
     public static void xButtonPressed() throws InterruptedException {
         if (logger != null) logger.severe("exit button pressed");
         xButtonPressed = true;
@@ -43,27 +53,36 @@ public class Main {
         logger = initLogger();
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
         Config config = new Config(logger, "config.properties");
-        Util util = new UtilImpl(config);
+        Util util = createUtil(logger, config);
+        EventLog events = new EventLog(logger, config.logBufferSize, config.logOverflow);
+        Clock clock = new ClockImpl(config.clockSpeed);
+        Journal journal = createJournal(config, clock);
+
+        if (config.headless) {
+            runHeadless(config, util, events, clock, journal);
+            return;
+        }
 
         Player[] players = new Player[config.players];
         UserInterface ui = null;
         try {
-            ui = new UserInterfaceSwing(logger, config, players);
+            ui = new UserInterfaceSwing(events, config, players);
         } catch (UnsupportedOperationException | IllegalArgumentException e) {
             logger.severe("error creating swing user interface: " + e.getMessage());
             logger.severe("will try to run without user interface");
             if (config.humanPlayers > 0)
                 logger.severe("warning: running with human players with no user interface");
         }
-        ui = new UserInterfaceDecorator(logger, util, ui);
+        ui = new UserInterfaceDecorator(events, util, createServer(config, events, players, ui));
 
-        Env env = new Env(logger, config, ui, util);
+        Env env = new Env(logger, config, ui, util, clock, events, journal);
 
         // create the game entities
         Table table = new Table(env);
-        dealer = new Dealer(env, table, players);
+        long seed = config.gameSeed(0);
+        dealer = new Dealer(env, table, players, seed);
         for (int i = 0; i < players.length; i++)
-            players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
+            players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers, seed);
 
         // start the dealer thread
         ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
@@ -72,26 +91,110 @@ public class Main {
         try {
             // shutdown stuff
             dealerThread.joinWithLog();
-            if (!xButtonPressed && config.endGamePauseMillies > 0) Thread.sleep(config.endGamePauseMillies);
+            if (!xButtonPressed && config.endGamePauseMillies > 0) env.clock.sleep(config.endGamePauseMillies);
         } catch (InterruptedException ignored) {
         } finally {
             logger.severe("thanks for playing... it was fun!");
             System.out.println("Thanks for playing... it was fun!");
             ThreadLogger.logStop(logger, Thread.currentThread().getName());
             if (!xButtonPressed) env.ui.dispose();
+            journal.close();
+            events.close();
+            for (Handler h : logger.getHandlers()) h.flush();
+        }
+    }
+
+    /**
+     * Runs config.headlessGames games one after the other with no user interface (and without loading any AWT
+     * classes), then reports the throughput.
+     */
+    private static void runHeadless(Config config, Util util, EventLog events, Clock clock, Journal journal) {
+        if (config.humanPlayers > 0 && config.serverAddress.isEmpty())
+            logger.severe("warning: running with human players in headless mode (they have no input)");
+        System.setProperty("java.awt.headless", "true");
+        Env env = new Env(logger, config, createServer(config, events, null, new UserInterfaceHeadless()), util,
+                clock, events, journal);
+
+        int games = 0;
+        long start = System.nanoTime();
+        try {
+            for (; games < config.headlessGames; ++games) {
+                Player[] players = new Player[config.players]; // the players of the last game may still be stopping.
+                if (env.ui instanceof UserInterfaceServer) ((UserInterfaceServer) env.ui).setPlayers(players);
+                Table table = new Table(env);
+                long seed = config.gameSeed(games); // every game deals and plays differently
+                dealer = new Dealer(env, table, players, seed);
+                for (int i = 0; i < players.length; i++)
+                    players[i] = new Player(env, dealer, table, i, i < config.humanPlayers, seed);
+
+                ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
+                dealerThread.startWithLog();
+                dealerThread.joinWithLog();
+            }
+        } catch (InterruptedException ignored) {
+        } finally {
+            double seconds = (System.nanoTime() - start) / 1e9;
+            String report = String.format("played %d games in %.3f seconds (%.2f games/sec)", games, seconds, games / seconds);
+            logger.severe(report);
+            System.out.println(report);
+            ThreadLogger.logStop(logger, Thread.currentThread().getName());
+            env.ui.dispose();
+            journal.close();
+            events.close();
             for (Handler h : logger.getHandlers()) h.flush();
         }
     }
 
+    private static Journal createJournal(Config config, Clock clock) {
+        if (!config.journal) return Journal.NONE;
+        try {
+            return new JournalMapped(Paths.get("./logs/" + runName + ".journal"), config, clock);
+        } catch (UncheckedIOException | IllegalArgumentException e) {
+            logger.severe("warning: cannot create the journal, running without a journal: " + e.getMessage());
+            return Journal.NONE;
+        }
+    }
+
+    /**
+     * Wraps a user interface with the game server if Config::serverAddress is set.
+     *
+     * @return - the server, or ui itself if there is no server or it cannot start.
+     */
+    private static UserInterface createServer(Config config, EventLog events, Player[] players, UserInterface ui) {
+        if (config.serverAddress.isEmpty()) return ui;
+        try {
+            return new UserInterfaceServer(events, config, players, ui);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.severe("warning: cannot start the game server on " + config.serverAddress + ", running without it: " + e);
+            return ui;
+        }
+    }
+
+    private static Util createUtil(Logger logger, Config config) {
+        switch (config.utilEngine) {
+            case "combinatorial":
+                return new UtilImpl(config);
+            case "packed":
+                if (UtilPacked.fits(config)) return new UtilPacked(config);
+                logger.severe("warning: cards do not fit the packed util engine, using the completion engine instead.");
+                return new UtilCompletion(config);
+            case "completion":
+                return new UtilCompletion(config);
+            default:
+                logger.severe("warning: unknown util engine " + config.utilEngine + ", using the completion engine.");
+                return new UtilCompletion(config);
+        }
+    }
+
     private static Logger initLogger() {
 
-        //just to make our log file nicer :)
-        SimpleDateFormat format = new SimpleDateFormat("M-d_HH-mm-ss");
-        FileHandler handler;
+        StreamHandler handler; // not a FileHandler: it would flush every record, the event log flushes in batches.
         try {
             //noinspection ResultOfMethodCallIgnored
             new File("./logs/").mkdirs();
-            handler = new FileHandler("./logs/" + format.format(Calendar.getInstance().getTime()) + ".log");
+            OutputStream file = new FileOutputStream("./logs/" + runName + ".log");
+            handler = new StreamHandler(new BufferedOutputStream(file), new SimpleFormatter());
+            handler.setLevel(Level.ALL);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -1,5 +1,6 @@
 package bguspl.set;
 
+import java.lang.reflect.Method;
 import java.util.logging.Logger;
 
 public class ThreadLogger extends Thread {
@@ -24,6 +25,43 @@ public class ThreadLogger extends Thread {
         }
     }
 
+    /**
+     * Thread.ofVirtual, Thread.Builder::name and Thread.Builder::unstarted (null if the JVM has no virtual threads).
+     */
+    private static final Method[] virtualThreadBuilder = findVirtualThreadBuilder();
+
+    private static Method[] findVirtualThreadBuilder() {
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            return new Method[]{Thread.class.getMethod("ofVirtual"), builder.getMethod("name", String.class),
+                    builder.getMethod("unstarted", Runnable.class)};
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates (but does not start) a thread running a target.
+     *
+     * @param target  - the runnable to run.
+     * @param name    - the name of the thread.
+     * @param virtual - true iff a virtual thread should be created (if the JVM supports them).
+     * @param logger  - the logger to warn if virtual threads are not supported.
+     * @return - the new thread.
+     */
+    public static Thread newThread(Runnable target, String name, boolean virtual, Logger logger) {
+        if (virtual && virtualThreadBuilder != null) {
+            try {
+                Object builder = virtualThreadBuilder[1].invoke(virtualThreadBuilder[0].invoke(null), name);
+                return (Thread) virtualThreadBuilder[2].invoke(builder, target);
+            } catch (ReflectiveOperationException e) {
+                logger.severe("cannot create virtual thread " + name + ": " + e);
+            }
+        } else if (virtual)
+            logger.severe("warning: virtual threads are not supported by this JVM, using platform threads.");
+        return new Thread(target, name);
+    }
+
     public static void logStart(Logger logger, String name) {
         logger.info("thread " + name + " starting.");
     }
@@ -0,0 +1,534 @@
+package bguspl.set;
+
+import bguspl.set.ex.Player;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+/**
+ * A user interface that serves the game to remote players over TCP (see Config::serverAddress), on top of another
+ * user interface (or none). Remote players join as human players and press slots like the keyboard does, and every
+ * connection receives the updates of the game.
+ * <p>
+ * A single selector thread serves all the connections with non-blocking channels. The updates are encoded by the game
+ * threads into a shared buffer, and the selector thread sends everything encoded since its last wake-up to every
+ * connection at once, so a burst of updates (e.g. a reshuffle) costs a few writes rather than one per update. A
+ * connection that does not keep up is dropped once MAX_BACKLOG bytes are waiting for it.
+ * <p>
+ * The protocol is binary and big-endian, every message starting with its type byte. From the client:
+ * <pre>
+ *     JOIN    short player           play a human player (answered with JOINED)
+ *     PRESS   short slot             press a slot as the joined player
+ * </pre>
+ * From the server:
+ * <pre>
+ *     WELCOME short players, short tableSize, byte featureSize, byte featureCount    first message, then the state
+ *     JOINED  short player (-1 if refused)
+ *     CARD    short slot, int card (-1 if removed)
+ *     TOKEN   short player, short slot, byte placed (1) or removed (0)
+ *     CLEAR   short slot (-1 for all)                         all the tokens of a slot (or of the table) removed
+ *     SCORE   short player, int score
+ *     FREEZE  short player, int millis
+ *     TIMER   int millis, byte flags (1 warning, 2 elapsed)
+ *     WINNERS short count, count x short player
+ * </pre>
+ * All the updates carry absolute values, so applying an update twice is harmless: a new connection gets the state of
+ * the game followed by the updates that were not sent yet.
+ */
+public class UserInterfaceServer implements UserInterface {
+
+    // client messages
+    public static final byte JOIN = 1, PRESS = 2;
+    public static final int CLIENT_MESSAGE_SIZE = 3;
+
+    // server messages
+    public static final byte WELCOME = 1, JOINED = 2, CARD = 3, TOKEN = 4, CLEAR = 5, SCORE = 6, FREEZE = 7, TIMER = 8,
+            WINNERS = 9;
+    public static final byte TIMER_WARN = 1, TIMER_ELAPSED = 2;
+
+    private static final int MAX_BACKLOG = 4 << 20;
+
+    private final EventLog events;
+    private final Config config;
+    private volatile Player[] players;
+    private final UserInterface ui;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Thread thread;
+
+    /**
+     * The state of the game as sent to the clients (for the new connections), and the updates not sent yet. Guarded
+     * by lock.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int[] slotCards;
+    private final long[] slotTokens; // tokenWords longs per slot, one bit per player
+    private final int tokenWords;
+    private final int[] scores;
+    private final int[] freezes;
+    private ByteBuffer pending = ByteBuffer.allocate(4096);
+
+    /**
+     * The updates being sent by the selector thread (swapped with pending).
+     */
+    private ByteBuffer sending = ByteBuffer.allocate(4096);
+
+    /**
+     * True iff the selector was woken up for updates it did not send yet.
+     */
+    private final AtomicBoolean wakeup = new AtomicBoolean();
+
+    /**
+     * True once the server is disposed of: the selector thread sends the last updates and stops.
+     */
+    private volatile boolean closing;
+
+    /**
+     * The players joined by a connection (touched by the selector thread only).
+     */
+    private final boolean[] joined;
+
+    /**
+     * A client connection: what was read of its next message, and what is waiting to be written to it.
+     */
+    private static class Connection {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(CLIENT_MESSAGE_SIZE);
+        ByteBuffer out = ByteBuffer.allocate(1024); // in write mode
+        int player = -1;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Starts the server.
+     *
+     * @param events  - the event log.
+     * @param config  - the game configuration (Config::serverAddress is the address to listen on).
+     * @param players - the players (filled in later, before the game starts), or null until setPlayers.
+     * @param ui      - the user interface to pass everything on to (null for none).
+     * @throws IOException - if the server cannot listen on the address.
+     */
+    public UserInterfaceServer(EventLog events, Config config, Player[] players, UserInterface ui) throws IOException {
+        this.events = events;
+        this.config = config;
+        this.players = players;
+        this.ui = ui;
+        tokenWords = (config.players + 63) >> 6;
+        slotCards = new int[config.tableSize];
+        Arrays.fill(slotCards, -1);
+        slotTokens = new long[config.tableSize * tokenWords];
+        scores = new int[config.players];
+        freezes = new int[config.players];
+        joined = new boolean[config.players];
+
+        int colon = config.serverAddress.lastIndexOf(':');
+        String host = colon < 0 ? "" : config.serverAddress.substring(0, colon);
+        int port = Integer.parseInt(config.serverAddress.substring(colon + 1).trim());
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        try {
+            // no host means loopback: listening on other interfaces (no authentication) has to be asked for explicitly.
+            server.bind(host.isEmpty() ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port) : new InetSocketAddress(host, port));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException | RuntimeException e) {
+            server.close();
+            selector.close();
+            throw e;
+        }
+        thread = new Thread(this::serve, "server");
+        thread.setDaemon(true);
+        thread.start();
+        events.log(Level.SEVERE, "game server listening on " + getLocalAddress());
+    }
+
+    /**
+     * Sets the players of the next game the presses go to (the previous game's players may still be stopping).
+     *
+     * @param players - the players (filled in later, before the game starts).
+     */
+    public void setPlayers(Player[] players) {
+        this.players = players;
+    }
+
+    /**
+     * @return - the address the server listens on (e.g. the actual port if the configured one is 0).
+     */
+    public InetSocketAddress getLocalAddress() {
+        try {
+            return (InetSocketAddress) server.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The main loop of the selector thread.
+     */
+    private void serve() {
+        try {
+            while (true) {
+                selector.select();
+                wakeup.set(false); // later updates wake the selector up again.
+                broadcast();
+                for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                    else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) read(key, connection);
+                        if (key.isValid() && key.isWritable()) write(key, connection);
+                    }
+                }
+                if (closing) break;
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            events.log(Level.SEVERE, "game server stopped: " + e);
+        } finally {
+            try {
+                for (SelectionKey key : selector.keys()) key.channel().close();
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) return;
+        Connection connection = new Connection(channel);
+        SelectionKey key;
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            key = channel.register(selector, SelectionKey.OP_READ, connection);
+            events.log(Level.INFO, "client connected from " + channel.getRemoteAddress());
+        } catch (IOException e) { // only this connection fails.
+            events.log(Level.WARNING, "cannot accept a client: " + e);
+            channel.close();
+            return;
+        }
+
+        // the configuration and the state of the game (the updates not broadcast yet follow)
+        reserve(connection, 7).put(WELCOME).putShort((short) config.players).putShort((short) config.tableSize)
+                .put((byte) config.featureSize).put((byte) config.featureCount);
+        lock.lock();
+        try {
+            for (int slot = 0; slot < config.tableSize; slot++) {
+                if (slotCards[slot] >= 0) reserve(connection, 7).put(CARD).putShort((short) slot).putInt(slotCards[slot]);
+                for (int player = 0; player < config.players; player++)
+                    if ((slotTokens[slot * tokenWords + (player >> 6)] & 1L << player) != 0)
+                        reserve(connection, 6).put(TOKEN).putShort((short) player).putShort((short) slot).put((byte) 1);
+            }
+            for (int player = 0; player < config.players; player++) {
+                reserve(connection, 7).put(SCORE).putShort((short) player).putInt(scores[player]);
+                reserve(connection, 7).put(FREEZE).putShort((short) player).putInt(freezes[player]);
+            }
+        } finally {
+            lock.unlock();
+        }
+        write(key, connection);
+    }
+
+    /**
+     * Reads the messages of a client and acts on them.
+     */
+    private void read(SelectionKey key, Connection connection) {
+        try {
+            while (true) {
+                int read = connection.channel.read(connection.in);
+                if (read < 0) {
+                    close(key, connection, "disconnected");
+                    return;
+                }
+                if (connection.in.hasRemaining()) return; // the rest of the message did not arrive yet.
+                connection.in.flip();
+                byte type = connection.in.get();
+                short value = connection.in.getShort();
+                connection.in.clear();
+                if (type == JOIN) join(key, connection, value);
+                else if (type == PRESS) press(connection, value);
+                else {
+                    close(key, connection, "sent an unknown message " + type);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            close(key, connection, e.toString());
+        }
+    }
+
+    private void join(SelectionKey key, Connection connection, int player) {
+        boolean accepted = connection.player < 0 && player >= 0 && player < config.humanPlayers && !joined[player];
+        if (accepted) {
+            joined[player] = true;
+            connection.player = player;
+            events.log(Level.INFO, "remote player " + (player + 1) + " joined");
+        }
+        reserve(connection, 3).put(JOINED).putShort((short) (accepted ? player : -1));
+        write(key, connection);
+    }
+
+    private void press(Connection connection, int slot) {
+        if (connection.player < 0 || slot < 0 || slot >= config.tableSize) return;
+        Player[] players = this.players;
+        Player player = players == null ? null : players[connection.player];
+        if (player != null) player.keyPressed(slot); // only waits for the table lock while the cards change.
+    }
+
+    /**
+     * Sends the updates encoded since the last time to all the connections.
+     */
+    private void broadcast() {
+        lock.lock();
+        try {
+            ByteBuffer updates = pending;
+            pending = sending;
+            sending = updates;
+        } finally {
+            lock.unlock();
+        }
+        if (sending.position() == 0) return;
+        sending.flip();
+        for (SelectionKey key : selector.keys()) {
+            if (!(key.attachment() instanceof Connection) || !key.isValid()) continue;
+            Connection connection = (Connection) key.attachment();
+            if (connection.out.position() + sending.remaining() > MAX_BACKLOG) {
+                close(key, connection, "does not keep up with the game");
+                continue;
+            }
+            reserve(connection, sending.remaining()).put(sending.duplicate());
+            write(key, connection);
+        }
+        sending.clear();
+    }
+
+    /**
+     * Writes as much as the channel takes, and asks to be told when it takes more if something is left.
+     */
+    private void write(SelectionKey key, Connection connection) {
+        if (!key.isValid()) return;
+        try {
+            connection.out.flip();
+            connection.channel.write(connection.out);
+            connection.out.compact();
+            key.interestOps(connection.out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        } catch (IOException e) {
+            close(key, connection, e.toString());
+        }
+    }
+
+    private void close(SelectionKey key, Connection connection, String reason) {
+        key.cancel();
+        if (connection.player >= 0) joined[connection.player] = false;
+        try {
+            events.log(Level.INFO, "client " + connection.channel.getRemoteAddress() + " " + reason);
+            connection.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * @return - the outbound buffer of a connection, with room for size more bytes.
+     */
+    private static ByteBuffer reserve(Connection connection, int size) {
+        connection.out = ensure(connection.out, size);
+        return connection.out;
+    }
+
+    private static ByteBuffer ensure(ByteBuffer buffer, int size) {
+        if (buffer.remaining() >= size) return buffer;
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + size));
+        buffer.flip();
+        return larger.put(buffer);
+    }
+
+    /**
+     * Starts encoding an update (called under the lock).
+     *
+     * @return - the pending buffer, with room for size more bytes.
+     */
+    private ByteBuffer update(int size) {
+        pending = ensure(pending, size);
+        return pending;
+    }
+
+    /**
+     * Wakes the selector thread up to send the updates (called after releasing the lock), unless it was already.
+     */
+    private void flush() {
+        if (wakeup.compareAndSet(false, true)) selector.wakeup();
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        if (ui != null) ui.placeCard(card, slot);
+        lock.lock();
+        try {
+            slotCards[slot] = card;
+            update(7).put(CARD).putShort((short) slot).putInt(card);
+        } finally {
+            lock.unlock();
+        }
+        flush();
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        if (ui != null) ui.removeCard(slot);
+        lock.lock();
+        try {
+            slotCards[slot] = -1;
+            update(7).put(CARD).putShort((short) slot).putInt(-1);
+        } finally {
+            lock.unlock();
+        }
+        flush();
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        if (ui != null) ui.placeToken(player, slot);
+        token(player, slot, true);
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        if (ui != null) ui.removeToken(player, slot);
+        token(player, slot, false);
+    }
+
+    private void token(int player, int slot, boolean placed) {
+        lock.lock();
+        try {
+            int word = slot * tokenWords + (player >> 6);
+            if (placed) slotTokens[word] |= 1L << player;
+            else slotTokens[word] &= ~(1L << player);
+            update(6).put(TOKEN).putShort((short) player).putShort((short) slot).put((byte) (placed ? 1 : 0));
+        } finally {
+            lock.unlock();
+        }
+        flush();
+    }
+
+    @Override
+    public void removeTokens() {
+        if (ui != null) ui.removeTokens();
+        lock.lock();
+        try {
+            Arrays.fill(slotTokens, 0);
+            update(3).put(CLEAR).putShort((short) -1);
+        } finally {
+            lock.unlock();
+        }
+        flush();
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        if (ui != null) ui.removeTokens(slot);
+        lock.lock();
+        try {
+            Arrays.fill(slotTokens, slot * tokenWords, (slot + 1) * tokenWords, 0);
+            update(3).put(CLEAR).putShort((short) slot);
+        } finally {
+            lock.unlock();
+        }
+        flush();
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        if (ui != null) ui.setCountdown(millies, warn);
+        timer(millies, warn ? TIMER_WARN : 0);
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        if (ui != null) ui.setElapsed(millies);
+        timer(millies, TIMER_ELAPSED);
+    }
+
+    private void timer(long millies, byte flags) {
+        lock.lock();
+        try {
+            update(6).put(TIMER).putInt((int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, millies))).put(flags);
+        } finally {
+            lock.unlock();
+        }
+        flush();
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        if (ui != null) ui.setFreeze(player, millies);
+        int value = (int) Math.max(0, Math.min(Integer.MAX_VALUE, millies));
+        lock.lock();
+        try {
+            freezes[player] = value;
+            update(7).put(FREEZE).putShort((short) player).putInt(value);
+        } finally {
+            lock.unlock();
+        }
+        flush();
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        if (ui != null) ui.setScore(player, score);
+        lock.lock();
+        try {
+            scores[player] = score;
+            update(7).put(SCORE).putShort((short) player).putInt(score);
+        } finally {
+            lock.unlock();
+        }
+        flush();
+    }
+
+    @Override
+    public void announceWinner(int[] winners) {
+        if (ui != null) ui.announceWinner(winners);
+        lock.lock();
+        try {
+            ByteBuffer out = update(3 + 2 * winners.length).put(WINNERS).putShort((short) winners.length);
+            for (int player : winners) out.putShort((short) player);
+        } finally {
+            lock.unlock();
+        }
+        flush();
+    }
+
+    /**
+     * Sends the last updates, closes the connections and stops the server.
+     */
+    @Override
+    public void dispose() {
+        if (ui != null) ui.dispose();
+        closing = true;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
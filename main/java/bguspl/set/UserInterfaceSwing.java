@@ -8,13 +8,20 @@ import java.io.FileNotFoundException;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.List;
-import java.util.logging.Logger;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.stream.Collectors;
 
 import static java.lang.String.format;
 
 /**
  * Java Swing implementation of the UserInterface interface.
+ * <p>
+ * The game threads never touch the Swing components: the UserInterface methods only update the state of the game
+ * below and mark what changed. A frame timer on the event dispatch thread applies the changes at most
+ * Config::frameRate times per second, so that a burst of changes (e.g. a reshuffle) is drawn once, and repaints only
+ * the cells that changed.
  */
 public class UserInterfaceSwing extends JFrame implements UserInterface {
 
@@ -24,15 +31,63 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
     private final WinnerPanel winnerPanel;
     private final Config config;
 
+    /**
+     * The card in each slot (-1 if none).
+     */
+    private final AtomicIntegerArray slotCards;
+
+    /**
+     * The players with a token in each slot: tokenWords longs per slot, one bit per player.
+     */
+    private final int tokenWords;
+    private final AtomicLongArray slotTokens;
+
+    /**
+     * The freeze time and score of each player.
+     */
+    private final AtomicLongArray playerFreezes;
+    private final AtomicIntegerArray playerScores;
+
+    /**
+     * The countdown (or elapsed time) display.
+     */
+    private volatile long timerMillis;
+    private volatile boolean timerWarn;
+    private volatile boolean timerElapsed;
+
+    /**
+     * The winners, once announced.
+     */
+    private volatile int[] winners;
+
+    /**
+     * What changed since the last frame: one bit per slot and one bit per player, the timer and the winners.
+     */
+    private final AtomicLongArray dirtySlots;
+    private final AtomicLongArray dirtyPlayers;
+    private final AtomicBoolean dirtyTimer = new AtomicBoolean();
+    private final AtomicBoolean dirtyWinners = new AtomicBoolean();
+
+    private final Timer frameTimer;
+
     static String intInBaseToPaddedString(int n, int padding, int base) {
         return format("%" + padding + "s", Integer.toString(n, base)).replace(' ', '0');
     }
 
-    public UserInterfaceSwing(Logger logger, Config config, Player[] players) {
+    public UserInterfaceSwing(EventLog events, Config config, Player[] players) {
 
         this.config = config;
+        slotCards = new AtomicIntegerArray(config.tableSize);
+        for (int slot = 0; slot < config.tableSize; ++slot)
+            slotCards.set(slot, -1);
+        tokenWords = (config.players + 63) >> 6;
+        slotTokens = new AtomicLongArray(config.tableSize * tokenWords);
+        playerFreezes = new AtomicLongArray(config.players);
+        playerScores = new AtomicIntegerArray(config.players);
+        dirtySlots = new AtomicLongArray((config.tableSize + 63) >> 6);
+        dirtyPlayers = new AtomicLongArray((config.players + 63) >> 6);
         timerPanel = new TimerPanel();
-        gamePanel = new GamePanel();
+        gamePanel = new GamePanel(events);
         playersPanel = new PlayersPanel();
         winnerPanel = new WinnerPanel();
 
@@ -63,12 +118,47 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         setLocationRelativeTo(null);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
-        addKeyListener(new InputManager(logger, config, players));
+        addKeyListener(new InputManager(events, config, players));
         addWindowListener(new WindowManager());
 
+        frameTimer = new Timer(1000 / config.frameRate, e -> drawFrame());
+        frameTimer.setCoalesce(true); // a late frame draws all the changes since the previous one.
+        frameTimer.start();
+
         EventQueue.invokeLater(() -> setVisible(true));
     }
 
+    private static void mark(AtomicLongArray bits, int index) {
+        bits.getAndAccumulate(index >> 6, 1L << index, (word, bit) -> word | bit);
+    }
+
+    private void markSlot(int slot) {
+        mark(dirtySlots, slot);
+    }
+
+    private void markPlayer(int player) {
+        mark(dirtyPlayers, player);
+    }
+
+    /**
+     * Applies the changes since the last frame to the Swing components (runs on the event dispatch thread).
+     */
+    private void drawFrame() {
+        for (int word = 0; word < dirtySlots.length(); ++word)
+            for (long bits = dirtySlots.getAndSet(word, 0); bits != 0; bits &= bits - 1)
+                gamePanel.drawSlot((word << 6) + Long.numberOfTrailingZeros(bits));
+        for (int word = 0; word < dirtyPlayers.length(); ++word)
+            for (long bits = dirtyPlayers.getAndSet(word, 0); bits != 0; bits &= bits - 1)
+                playersPanel.drawPlayer((word << 6) + Long.numberOfTrailingZeros(bits));
+        if (dirtyTimer.getAndSet(false))
+            timerPanel.draw();
+        if (dirtyWinners.getAndSet(false)) {
+            playersPanel.setVisible(false);
+            winnerPanel.announceWinner(winners);
+            winnerPanel.setVisible(true);
+        }
+    }
+
     private class TimerPanel extends JPanel {
 
         private final JLabel timerField;
@@ -90,23 +180,26 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             add(timerField);
         }
 
-        private void setCountdown(long millies, boolean warn) {
+        private void draw() {
+            long millies = timerMillis;
+            boolean warn = timerWarn;
+            if (timerElapsed) {
+                timerField.setText("Elapsed time: " + millies / 1000);
+                return;
+            }
             timerField.setText(generateTime(millies, warn));
             timerField.setForeground(warn ? Color.RED : Color.BLACK);
         }
-
-        private void setElapsed(long millies) {
-            timerField.setText("Elapsed time: " + millies / 1000);
-        }
     }
 
     private class GamePanel extends JLayeredPane {
 
         private final Image emptyCard;
-        private final Image[] deck;
+        private final CardImages deck;
         private final Image[][] grid;
-        private final boolean[][][] playerTokens;
+        private final long[] shownTokens; // the tokens drawn in each slot (as in slotTokens)
         private final JLabel[][] tokenText;
+        private final StringBuilder text = new StringBuilder();
 
         private Image loadImageResource(String filename) {
             URL imageResource = getClass().getClassLoader().getResource(filename);
@@ -115,7 +208,7 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             return new ImageIcon(imageResource).getImage();
         }
 
-        private GamePanel() {
+        private GamePanel(EventLog events) {
 
             setPreferredSize(new Dimension(config.columns * config.cellWidth, config.rows * config.cellHeight));
 
@@ -123,14 +216,12 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             assert config.featureSize < 10; // otherwise there will be naming conflicts
 
             // load the image resources
-            deck = new Image[config.deckSize];
-            for (int i = 0; i < config.deckSize; ++i)
-                deck[i] = loadImageResource("cards/" + intInBaseToPaddedString(i, config.featureCount, config.featureSize) + ".png");
+            deck = new CardImages(events, config); // decoded in the background, see drawSlot.
             emptyCard = loadImageResource("cards/empty_card.png");
 
             grid = new Image[config.rows][config.columns];
             tokenText = new JLabel[config.rows][config.columns];
-            playerTokens = new boolean[config.players][config.rows][config.columns];
+            shownTokens = new long[config.tableSize * tokenWords];
             for (int row = 0; row < config.rows; row++) {
                 for (int column = 0; column < config.columns; column++) {
                     // init the cards on the table grid as empty cards
@@ -148,59 +239,41 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             }
         }
 
-        private void placeCard(int slot, int card) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            grid[row][column] = deck[card];
-            validate();
-            repaint();
-        }
-
-        private void removeCard(int slot) {
+        /**
+         * Draws the card and the tokens of a slot, repainting only its cell (and only if the card changed).
+         */
+        private void drawSlot(int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
-            grid[row][column] = emptyCard;
-            validate();
-            repaint();
-        }
-
-        private void placeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = true;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
-        }
-
-        private void removeTokens() {
-            for (int i = 0; i < config.tableSize; i++)
-                removeTokens(i);
-        }
-
-        private void removeTokens(int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            for (int player = 0; player < playerTokens.length; player++) {
-                playerTokens[player][row][column] = false;
-                tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            int card = slotCards.get(slot);
+            Image image = card < 0 ? emptyCard : deck.get(card);
+            if (image == null) { // not loaded (yet): draw an empty card and try again in the next frame.
+                if (!deck.done(card)) markSlot(slot);
+                image = emptyCard;
+            }
+            if (grid[row][column] != image) {
+                grid[row][column] = image;
+                repaint(column * config.cellWidth, row * config.cellHeight, config.cellWidth, config.cellHeight);
             }
-        }
 
-        private void removeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = false;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            boolean changed = false;
+            for (int word = 0; word < tokenWords; ++word) {
+                long tokens = slotTokens.get(slot * tokenWords + word);
+                changed |= shownTokens[slot * tokenWords + word] != tokens;
+                shownTokens[slot * tokenWords + word] = tokens;
+            }
+            if (changed) tokenText[row][column].setText(generatePlayersTokenText(slot));
         }
 
-        private String generatePlayersTokenText(int row, int column) {
-            String text = "";
+        private String generatePlayersTokenText(int slot) {
+            text.setLength(0);
             for (int player = 0; player < config.players; player++) {
-                if (playerTokens[player][row][column])
-                    text = text.concat(config.playerNames[player] + ", ");
+                if ((shownTokens[slot * tokenWords + (player >> 6)] & 1L << player) != 0) {
+                    if (text.length() > 0) text.append(", ");
+                    text.append(config.playerNames[player]);
+                }
             }
-            if (text.length() < 2)
-                return "";
-            return text.substring(0, text.length() - 2);
+            return text.toString();
         }
 
         @Override
@@ -235,7 +308,8 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             }
         }
 
-        private void setFreeze(int player, long millies) {
+        private void drawPlayer(int player) {
+            long millies = playerFreezes.get(player);
             if (millies > 0) {
                 this.playersTable[0][player].setText(config.playerNames[player] + " (" + millies / 1000 + ")");
                 this.playersTable[0][player].setForeground(Color.RED);
@@ -243,10 +317,7 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
                 this.playersTable[0][player].setText(config.playerNames[player]);
                 this.playersTable[0][player].setForeground(Color.BLACK);
             }
-        }
-
-        private void setScore(int player, int score) {
-            playersTable[1][player].setText(Integer.toString(score));
+            playersTable[1][player].setText(Integer.toString(playerScores.get(player)));
         }
     }
 
@@ -276,63 +347,81 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
     @Override
     public void placeCard(int card, int slot) {
-        gamePanel.placeCard(slot, card);
+        gamePanel.deck.prioritize(card);
+        slotCards.set(slot, card);
+        markSlot(slot);
     }
 
     @Override
     public void removeCard(int slot) {
-        gamePanel.removeCard(slot);
+        slotCards.set(slot, -1);
+        markSlot(slot);
     }
 
     @Override
     public void placeToken(int player, int slot) {
-        gamePanel.placeToken(player, slot);
+        slotTokens.getAndAccumulate(slot * tokenWords + (player >> 6), 1L << player, (word, bit) -> word | bit);
+        markSlot(slot);
     }
 
     @Override
     public void removeTokens() {
-        gamePanel.removeTokens();
+        for (int slot = 0; slot < config.tableSize; slot++)
+            removeTokens(slot);
     }
 
     @Override
     public void removeTokens(int slot) {
-        gamePanel.removeTokens(slot);
+        for (int word = 0; word < tokenWords; ++word)
+            slotTokens.set(slot * tokenWords + word, 0);
+        markSlot(slot);
     }
 
     @Override
     public void removeToken(int player, int slot) {
-        gamePanel.removeToken(player, slot);
+        slotTokens.getAndAccumulate(slot * tokenWords + (player >> 6), ~(1L << player), (word, mask) -> word & mask);
+        markSlot(slot);
     }
 
     @Override
     public void setCountdown(long millies, boolean warn) {
-        timerPanel.setCountdown(millies, warn);
+        // mark the timer only if what it shows changes (seconds, or hundredths of seconds while warning).
+        boolean changed = timerElapsed || warn != timerWarn || (warn ? millies / 10 != timerMillis / 10 : millies / 1000 != timerMillis / 1000);
+        timerMillis = millies;
+        timerWarn = warn;
+        timerElapsed = false;
+        if (changed) dirtyTimer.set(true);
     }
 
     @Override
     public void setElapsed(long millies) {
-        timerPanel.setElapsed(millies);
+        boolean changed = !timerElapsed || millies / 1000 != timerMillis / 1000;
+        timerMillis = millies;
+        timerElapsed = true;
+        if (changed) dirtyTimer.set(true);
     }
 
     @Override
     public void setFreeze(int player, long millies) {
-        playersPanel.setFreeze(player, millies);
+        long shown = playerFreezes.getAndSet(player, millies);
+        if ((shown > 0) != (millies > 0) || shown / 1000 != millies / 1000) markPlayer(player);
     }
 
     @Override
     public void setScore(int player, int score) {
-        playersPanel.setScore(player, score);
+        playerScores.set(player, score);
+        markPlayer(player);
     }
 
     @Override
     public void announceWinner(int[] players) {
-        playersPanel.setVisible(false);
-        winnerPanel.announceWinner(players);
-        winnerPanel.setVisible(true);
+        winners = players.clone();
+        dirtyWinners.set(true);
     }
 
     @Override
     public void dispose() {
+        frameTimer.stop();
         super.dispose();
     }
 }
@@ -8,7 +8,7 @@ import java.util.List;
 public interface Util {
 
     /**
-     * Converts a card id to an array of features (of config.featureCount values between 0 and config.featuresSize - 1)
+     * Converts a card id to a (new) array of features (of config.featureCount values between 0 and config.featuresSize - 1)
      *
      * @param card - the card id.
      * @return - the array of features.
@@ -31,6 +31,37 @@ public interface Util {
      */
     boolean testSet(int[] cards);
 
+    /**
+     * Checks if three cards form a legal set, without allocating any memory.
+     *
+     * @param first  - the first card id.
+     * @param second - the second card id.
+     * @param third  - the third card id.
+     * @return - true iff the three cards form a legal set.
+     */
+    boolean testSet(int first, int second, int third);
+
+    /**
+     * Computes the single card that forms a legal set together with the two given cards, i.e. for each feature the
+     * same value if both cards agree on it or the missing value otherwise. Only defined for config.featureSize == 3.
+     *
+     * @param first  - the first card id.
+     * @param second - the second card id.
+     * @return - the card id completing the set, or -1 if sets do not consist of three cards.
+     */
+    int completeSet(int first, int second);
+
+    /**
+     * Computes the single card that forms a legal set together with config.featureSize - 1 given cards, i.e. for each
+     * feature the value of all the cards if they agree on it or the missing value if they all differ. Generalizes
+     * completeSet(first, second) to sets of any size.
+     *
+     * @param cards - config.featureSize - 1 distinct card ids.
+     * @return - the card id completing the set, or -1 if no card does (or sets consist of less than three cards, in
+     * which case the completion is not unique).
+     */
+    int completeSet(int[] cards);
+
     /**
      * Finds and returns up to count sets in the given collection of cards.
      *
@@ -40,6 +71,17 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * Finds and returns up to count sets among the first size cards of an array (e.g. the cards of a Deck), without
+     * boxing or copying them.
+     *
+     * @param cards - an array of card ids (it is only read).
+     * @param size  - the number of cards to search, at the start of the array.
+     * @param count - the maximum number of sets to find.
+     * @return - a list of up to count integer arrays, each one contains the card ids of a legal set (sorted).
+     */
+    List<int[]> findSets(int[] cards, int size, int count);
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
@@ -0,0 +1,80 @@
+package bguspl.set;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * An implementation of the Util interface that finds sets by completing pairs of cards instead of testing every
+ * combination. For each pair, the only card that completes it to a legal set is computed (see Util::completeSet) and
+ * looked up in a membership bitset of the given cards, which takes O(n^2) time and allocates nothing per candidate.
+ * Sets of k > 3 cards are found the same way from their k - 1 lowest cards, in O(n^(k-1)) time instead of O(n^k).
+ * Falls back to the combinatorial search of UtilImpl when sets consist of less than three cards.
+ */
+public class UtilCompletion extends UtilImpl {
+
+    public UtilCompletion(Config config) {
+        super(config);
+    }
+
+    @Override
+    public List<int[]> findSets(int[] cards, int n, int count) {
+        if (config.featureSize < 3) return super.findSets(cards, n, count);
+
+        // mark the cards in the membership bitset
+        long[] present = new long[(config.deckSize + 63) >>> 6];
+        for (int i = 0; i < n; ++i)
+            present[cards[i] >>> 6] |= 1L << cards[i];
+
+        LinkedList<int[]> sets = new LinkedList<>();
+        if (config.featureSize > 3) return findLargerSets(cards, n, present, count, sets);
+        for (int i = 0; i < n; ++i)
+            for (int j = i + 1; j < n; ++j) {
+                int low = Math.min(cards[i], cards[j]);
+                int high = Math.max(cards[i], cards[j]);
+                int third = completeSet(low, high);
+
+                // each set is reported once, by its two lowest cards
+                if (third > high && (present[third >>> 6] & (1L << third)) != 0) {
+                    sets.add(new int[]{low, high, third});
+                    if (sets.size() >= count) return sets;
+                }
+            }
+        return sets;
+    }
+
+    /**
+     * Finds sets of more than three cards by completing each combination of featureSize - 1 cards. Only completions
+     * higher than all the combined cards count, so that each set is reported once (by all its cards but the highest).
+     */
+    private List<int[]> findLargerSets(int[] cards, int n, long[] present, int count, LinkedList<int[]> sets) {
+        int r = config.featureSize - 1;
+        int[] combination = new int[r];
+        int[] chosen = new int[r];
+        for (int i = 0; i < r; ++i)
+            combination[i] = i;
+
+        while (combination[r - 1] < n) {
+            int highest = -1;
+            for (int i = 0; i < r; ++i) {
+                chosen[i] = cards[combination[i]];
+                highest = Math.max(highest, chosen[i]);
+            }
+            int last = completeSet(chosen);
+            if (last > highest && (present[last >>> 6] & (1L << last)) != 0) {
+                int[] set = Arrays.copyOf(chosen, r + 1);
+                set[r] = last;
+                Arrays.sort(set);
+                sets.add(set);
+                if (sets.size() >= count) return sets;
+            }
+
+            // generate next combination in lexicographic order
+            int t = r - 1;
+            while (t != 0 && combination[t] == n - r + t) --t;
+            combination[t]++;
+            for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+        }
+        return sets;
+    }
+}
@@ -4,57 +4,65 @@ import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.IntStream;
 
 /**
  * The implementation of the UserInterface interface.
  */
 public class UtilImpl implements Util {
 
-    private final Config config;
+    protected final Config config;
+
+    /**
+     * The features of all cards in the deck, computed once: the value of feature i of card c is at
+     * features[c * config.featureCount + i].
+     */
+    protected final int[] features;
 
     public UtilImpl(Config config) {
         this.config = config;
-    }
-
-    private void cardToFeatures(int card, int[] features) {
-        for (int i = config.featureCount - 1; i >= 0; --i) {
-            features[i] = card % config.featureSize;
-            card /= config.featureSize;
+        features = new int[config.deckSize * config.featureCount];
+        for (int card = 0; card < config.deckSize; ++card) {
+            int value = card;
+            for (int i = config.featureCount - 1; i >= 0; --i) {
+                features[card * config.featureCount + i] = value % config.featureSize;
+                value /= config.featureSize;
+            }
         }
     }
 
     @Override
     public int[] cardToFeatures(int card) {
-        int[] features = new int[config.featureCount];
-        cardToFeatures(card, features);
-        return features;
+        int[] cardFeatures = new int[config.featureCount];
+        System.arraycopy(features, card * config.featureCount, cardFeatures, 0, config.featureCount);
+        return cardFeatures;
     }
 
     @Override
     public int[][] cardsToFeatures(int[] cards) {
-        int[][] features = new int[cards.length][config.featureCount];
-        IntStream.range(0, cards.length).forEach(i -> cardToFeatures(cards[i], features[i]));
-        return features;
+        int[][] cardsFeatures = new int[cards.length][];
+        for (int i = 0; i < cards.length; ++i)
+            cardsFeatures[i] = cardToFeatures(cards[i]);
+        return cardsFeatures;
     }
 
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
-        for (int i = 0; i < config.featureCount; ++i) {
+        int featureCount = config.featureCount;
+        for (int i = 0; i < featureCount; ++i) {
             boolean sameSame = true, butDifferent = true;
 
             // check if this features is sameSame in all cards
-            for (int j = 1; j < features.length; ++j)
-                if (features[0][i] != features[j][i]) {
+            int first = features[cards[0] * featureCount + i];
+            for (int j = 1; j < cards.length; ++j)
+                if (first != features[cards[j] * featureCount + i]) {
                     sameSame = false;
                     break;
                 }
 
             // check if this feature is butDifferent in all cards
-            for (int j = 1; j < features.length; ++j)
-                for (int k = j; k < features.length; ++k)
-                    if (features[j - 1][i] == features[k][i]) {
+            for (int j = 1; j < cards.length && butDifferent; ++j)
+                for (int k = j; k < cards.length; ++k)
+                    if (features[cards[j - 1] * featureCount + i] == features[cards[k] * featureCount + i]) {
                         butDifferent = false;
                         break;
                     }
@@ -64,18 +72,79 @@ public class UtilImpl implements Util {
         return true;
     }
 
+    @Override
+    public boolean testSet(int first, int second, int third) {
+        int featureCount = config.featureCount;
+        int a = first * featureCount, b = second * featureCount, c = third * featureCount;
+        for (int i = 0; i < featureCount; ++i) {
+            boolean ab = features[a + i] == features[b + i];
+            boolean bc = features[b + i] == features[c + i];
+            boolean ac = features[a + i] == features[c + i];
+            // either all three values are equal or no two of them are
+            if (ab != bc || ab != ac) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int completeSet(int first, int second) {
+        if (config.featureSize != 3) return -1;
+        int featureCount = config.featureCount;
+        int a = first * featureCount, b = second * featureCount;
+        int third = 0;
+        for (int i = 0; i < featureCount; ++i)
+            // (a + b + c) % 3 == 0 holds for each feature of a legal set
+            third = third * 3 + (6 - features[a + i] - features[b + i]) % 3;
+        return third;
+    }
+
+    @Override
+    public int completeSet(int[] cards) {
+        int featureCount = config.featureCount, featureSize = config.featureSize;
+        if (featureSize < 3 || cards.length != featureSize - 1) return -1;
+        int completion = 0;
+        for (int i = 0; i < featureCount; ++i) {
+            int first = features[cards[0] * featureCount + i], sum = 0;
+            boolean sameSame = true;
+            long seen = 0;
+            for (int card : cards) {
+                int value = features[card * featureCount + i];
+                sameSame &= value == first;
+                seen |= 1L << value;
+                sum += value;
+            }
+            int value;
+            if (sameSame) value = first;
+            else if (Long.bitCount(seen) == cards.length) value = featureSize * (featureSize - 1) / 2 - sum; // the missing value
+            else return -1;
+            completion = completion * featureSize + value;
+        }
+        return completion;
+    }
+
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
+        int[] cards = new int[deck.size()];
+        int n = 0;
+        for (int card : deck)
+            cards[n++] = card;
+        return findSets(cards, n, count);
+    }
+
+    @Override
+    public List<int[]> findSets(int[] deck, int n, int count) {
         LinkedList<int[]> sets = new LinkedList<>();
-        int n = deck.size();
         int r = config.featureSize;
         int[] combination = new int[r];
 
         for (int i = 0; i < r; ++i)
             combination[i] = i;
 
-        while (combination[r - 1] < deck.size()) {
-            int[] cards = Arrays.stream(combination).map(deck::get).sorted().toArray();
+        while (combination[r - 1] < n) {
+            int[] cards = new int[r];
+            for (int i = 0; i < r; ++i)
+                cards[i] = deck[combination[i]];
+            Arrays.sort(cards);
             if (testSet(cards)) {
                 sets.add(cards);
                 if (sets.size() >= count) return sets;
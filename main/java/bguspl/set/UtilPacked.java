@@ -0,0 +1,84 @@
+package bguspl.set;
+
+/**
+ * An implementation of the Util interface that encodes every card as a packed long, with one field of
+ * config.featureSize bits per feature holding the feature value one-hot. Three cards form a legal set iff in every
+ * field the xor of their encodings equals their or (all values equal: a single bit survives both; all values
+ * different: all three bits survive both; otherwise the xor drops the shared bit), so a triple is tested with a
+ * handful of bitwise operations and no branches or loops.
+ * Only usable when config.featureCount * config.featureSize <= 64 (see fits).
+ */
+public class UtilPacked extends UtilCompletion {
+
+    /**
+     * The packed encodings of all cards in the deck.
+     */
+    private final long[] packed;
+
+    /**
+     * Mask of the lowest bit of every feature field.
+     */
+    private final long lowBits;
+
+    /**
+     * Mask of all bits used by the feature fields.
+     */
+    private final long fieldBits;
+
+    public UtilPacked(Config config) {
+        super(config);
+        if (!fits(config))
+            throw new IllegalArgumentException("cards with " + config.featureCount + " features of size "
+                    + config.featureSize + " do not fit in a long");
+
+        long low = 0;
+        for (int i = 0; i < config.featureCount; ++i)
+            low |= 1L << (i * config.featureSize);
+        lowBits = low;
+        fieldBits = low * ((1L << config.featureSize) - 1);
+
+        packed = new long[config.deckSize];
+        for (int card = 0; card < config.deckSize; ++card)
+            for (int i = 0; i < config.featureCount; ++i)
+                packed[card] |= 1L << (i * config.featureSize + features[card * config.featureCount + i]);
+    }
+
+    /**
+     * Checks if the cards described by a configuration can be packed in a long.
+     *
+     * @param config - the game configuration.
+     * @return - true iff one field of featureSize bits per feature fits in 64 bits.
+     */
+    public static boolean fits(Config config) {
+        return config.featureSize > 0 && config.featureCount * config.featureSize <= Long.SIZE;
+    }
+
+    @Override
+    public boolean testSet(int[] cards) {
+        if (cards.length != 3) return super.testSet(cards);
+        return testSet(cards[0], cards[1], cards[2]);
+    }
+
+    @Override
+    public boolean testSet(int first, int second, int third) {
+        long a = packed[first], b = packed[second], c = packed[third];
+        return (a ^ b ^ c) == (a | b | c);
+    }
+
+    @Override
+    public int completeSet(int first, int second) {
+        if (config.featureSize != 3) return -1;
+        long a = packed[first], b = packed[second];
+
+        // fields where both cards agree keep their value, the others get the one value neither card has
+        long same = a & b;
+        long agree = ((same | same >>> 1 | same >>> 2) & lowBits) * 7;
+        long c = same | (~(a | b) & fieldBits & ~agree);
+
+        // decode the one-hot fields back to a card id (feature 0 is the most significant digit)
+        int third = 0;
+        for (int i = 0; i < config.featureCount; ++i)
+            third = third * 3 + Long.numberOfTrailingZeros(c >>> (i * 3));
+        return third;
+    }
+}
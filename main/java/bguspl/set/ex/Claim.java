@@ -0,0 +1,120 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A set claimed by a player, submitted to the dealer (see Dealer::submitClaim). The dealer hands its verdict back to
+ * the claiming thread through the claim itself, waking it with LockSupport.unpark.
+ * The claim also carries the times (System.nanoTime) of the phases it goes through, see ClaimLatencies.
+ */
+public class Claim {
+
+    /**
+     * The possible outcomes of a claim.
+     */
+    public enum Verdict {
+        /** The cards formed a legal set and the player got a point. */
+        POINT,
+        /** The cards did not form a legal set and the player was penalized. */
+        PENALTY,
+        /** The player had less than three tokens left when the dealer checked the claim (no point and no penalty). */
+        STALE
+    }
+
+    /**
+     * The player who claimed the set.
+     */
+    public final Player player;
+
+    /**
+     * The thread waiting for the verdict.
+     */
+    private final Thread waiter;
+
+    /**
+     * The latencies the phases of this claim are recorded to.
+     */
+    private final ClaimLatencies latencies;
+
+    /**
+     * The dealer's verdict, set when the claim is verified but only handed to the claiming thread on completion.
+     */
+    private Verdict decided;
+
+    /**
+     * The dealer's verdict (null until the claim was completed).
+     */
+    private volatile Verdict verdict;
+
+    /**
+     * The times (System.nanoTime) of the phases of the claim. Only written by the thread in charge of each phase, and
+     * read after the volatile verdict was published.
+     */
+    private final long pressedNanos, submittedNanos;
+    private long dequeuedNanos, verifiedNanos, completedNanos;
+
+    /**
+     * The class constructor. The claim's verdict may only be awaited by the thread creating it.
+     *
+     * @param player       - the player who claimed the set.
+     * @param pressedNanos - the time (System.nanoTime) the third token was placed.
+     * @param latencies    - the latencies to record the phases of the claim to.
+     */
+    public Claim(Player player, long pressedNanos, ClaimLatencies latencies) {
+        this.player = player;
+        this.waiter = Thread.currentThread();
+        this.latencies = latencies;
+        this.pressedNanos = pressedNanos;
+        this.submittedNanos = System.nanoTime();
+    }
+
+    /**
+     * Called by the dealer when it takes the claim out of the queue.
+     */
+    void dequeued() {
+        dequeuedNanos = System.nanoTime();
+    }
+
+    /**
+     * Called by the dealer once the claimed cards were checked.
+     *
+     * @param verdict - the verdict.
+     */
+    void verified(Verdict verdict) {
+        verifiedNanos = System.nanoTime();
+        decided = verdict;
+    }
+
+    /**
+     * Called by the dealer, after replacing the cards of a legal set, to hand the verdict to the claiming thread.
+     *
+     * @post - the claiming thread is woken up.
+     */
+    void complete() {
+        completedNanos = System.nanoTime();
+        latencies.record(ClaimLatencies.Phase.SUBMIT, submittedNanos - pressedNanos);
+        latencies.record(ClaimLatencies.Phase.QUEUE, dequeuedNanos - submittedNanos);
+        latencies.record(ClaimLatencies.Phase.VERIFY, verifiedNanos - dequeuedNanos);
+        if (decided == Verdict.POINT)
+            latencies.record(ClaimLatencies.Phase.REPLACE, completedNanos - verifiedNanos);
+        this.verdict = decided;
+        LockSupport.unpark(waiter);
+    }
+
+    /**
+     * Blocks the claiming thread until the dealer has checked the claim.
+     *
+     * @return - the dealer's verdict.
+     * @throws InterruptedException - if the thread was interrupted while waiting.
+     */
+    public Verdict await() throws InterruptedException {
+        while (verdict == null) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+        long wokenNanos = System.nanoTime();
+        latencies.record(ClaimLatencies.Phase.WAKE, wokenNanos - completedNanos);
+        latencies.record(ClaimLatencies.Phase.TOTAL, wokenNanos - pressedNanos);
+        return verdict;
+    }
+}
@@ -0,0 +1,65 @@
+package bguspl.set.ex;
+
+import bguspl.set.LatencyHistogram;
+
+/**
+ * This class collects the latencies of the phases every claim goes through, from the key press that placed the third
+ * token until the claiming player is woken up with the verdict. Recording is lock-free, so it can be done on the hot
+ * path by the player and dealer threads.
+ */
+public class ClaimLatencies {
+
+    /**
+     * The phases of a claim.
+     */
+    public enum Phase {
+        SUBMIT("third token placed -> claim enqueued"),
+        QUEUE("claim enqueued -> dequeued by the dealer"),
+        VERIFY("claim dequeued -> set verified"),
+        REPLACE("set verified -> cards replaced (points only)"),
+        WAKE("verdict ready -> player woken up"),
+        TOTAL("third token placed -> player woken up");
+
+        private final String description;
+
+        Phase(String description) {
+            this.description = description;
+        }
+    }
+
+    private final LatencyHistogram[] histograms;
+
+    public ClaimLatencies() {
+        histograms = new LatencyHistogram[Phase.values().length];
+        for (int i = 0; i < histograms.length; ++i)
+            histograms[i] = new LatencyHistogram();
+    }
+
+    /**
+     * Records the latency of a phase of a claim.
+     *
+     * @param phase - the phase.
+     * @param nanos - the time the phase took, in nanoseconds.
+     */
+    public void record(Phase phase, long nanos) {
+        histograms[phase.ordinal()].record(nanos);
+    }
+
+    /**
+     * @param phase - the phase.
+     * @return - the histogram of the latencies of the phase.
+     */
+    public LatencyHistogram histogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    /**
+     * @return - a multi-line report of the latencies of all phases.
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder("claim latencies:");
+        for (Phase phase : Phase.values())
+            sb.append(String.format("%n  %-45s %s", phase.description, histograms[phase.ordinal()].summary()));
+        return sb.toString();
+    }
+}
@@ -1,12 +1,16 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.EventLog.Event;
+import bguspl.set.Journal;
 
-import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
 
 /**
  * This class manages the dealer's threads and data
@@ -26,33 +30,86 @@ public class Dealer implements Runnable {
     private final Player[] players;
 
     /**
-     * The list of card ids that are left in the dealer's deck.
+     * The cards that are left in the dealer's deck.
      */
-    private final List<Integer> deck;
+    private final Deck deck;
+
+    /**
+     * The legal sets that can still be formed from the cards in the deck and on the table.
+     */
+    private final RemainingSets remainingSets;
+
+    /**
+     * The cards of the claim being checked (config.featureSize of them, copied from the player's queue).
+     */
+    private final int[] claimed;
+
+    /**
+     * The source of the deck's draws (seeded by the game's seed: the first deal repeats, the next ones depend on the
+     * cards claimed meanwhile).
+     */
+    private final Random random;
 
     /**
      * True iff game should be terminated due to an external event.
      */
     private volatile boolean terminate;
-    public LinkedList<Player> setClaimed; // list of player who claims set!
+
+    /**
+     * The sets claimed by the players, in the order they were claimed (many players offer, only the dealer polls).
+     */
+    private final Queue<Claim> claims;
+
+    /**
+     * The latencies of the phases of the claims.
+     */
+    private final ClaimLatencies claimLatencies;
+
+    /**
+     * The frozen players, each one due when its freeze display changes or its freeze ends (see updateFreeze).
+     */
+    private final TimingWheel freezes;
+
+    /**
+     * The dealer thread (woken up with LockSupport.unpark when a set is claimed).
+     */
+    private volatile Thread dealerThread;
 
     /**
      * The time when the dealer needs to reshuffle the deck due to turn timeout.
      */
     private long reshuffleTime;
+
     /**
-     * use to lock the queue of the dealer to sync.
+     * The time of the next report of the claim latencies (see Config::latencyReportMillis), Long.MAX_VALUE if none.
      */
+    private long latencyReportTime = Long.MAX_VALUE;
 
-    public final Object Lock;
+    /**
+     * The seed of the game (see Config::gameSeed), written to the journal when the game starts.
+     */
+    private final long seed;
 
-    public Dealer(Env env, Table table, Player[] players) {
+    /**
+     * The class constructor.
+     *
+     * @param env     - the environment object.
+     * @param table   - the table object.
+     * @param players - the players of the game.
+     * @param seed    - the seed of the game's randomness (see Config::gameSeed).
+     */
+    public Dealer(Env env, Table table, Player[] players, long seed) {
         this.env = env;
         this.table = table;
         this.players = players;
-        deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
-        setClaimed = new LinkedList<Player>() ;
-        this.Lock = new Object() ;
+        this.seed = seed;
+        random = new Random(seed);
+        deck = new Deck(env.config.deckSize, random);
+        remainingSets = new RemainingSets(env);
+        claimed = new int[env.config.featureSize];
+        claims = new ConcurrentLinkedQueue<>();
+        claimLatencies = new ClaimLatencies();
+        freezes = new TimingWheel(players.length, env.clock.currentTimeMillis());
     }
 
     /**
@@ -60,19 +117,25 @@ public class Dealer implements Runnable {
      */
     @Override
     public void run() {
+        dealerThread = Thread.currentThread();
         for (Player p : players) {
-            Thread p1 = new Thread(p, "player");
-            p1.start();
+            p.createThread().start();
         }
-        reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis; // we added
+        reshuffleTime = env.clock.currentTimeMillis() + env.config.turnTimeoutMillis; // we added
+        if (env.config.latencyReportMillis > 0)
+            latencyReportTime = env.clock.currentTimeMillis() + env.config.latencyReportMillis;
         env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+        env.journal.record(Journal.Type.GAME_START, -1, -1, (int) (seed >>> 32), (int) seed, -1);
         while (!shouldFinish()) {
             placeCardsOnTable();
+            table.showChanges();
             timerLoop();
             updateTimerDisplay(true);
             removeAllCardsFromTable();
         }
         announceWinners();
+        env.journal.record(Journal.Type.GAME_END, -1);
+        env.events.log(Level.SEVERE, claimLatencyReport()); // not on the dealer thread: the log writer does the i/o.
         if(!terminate){
             terminateEndGame();
         }
@@ -80,32 +143,62 @@ public class Dealer implements Runnable {
     }
 
     /**
-     * The inner loop of the dealer thread that runs as long as the countdown did not time out.
+     * The inner loop of the dealer thread that runs as long as the countdown did not time out and there is a legal set
+     * on the table (otherwise nobody can score until the cards are reshuffled anyway). The displays are updated only
+     * when a deadline passes (see nextDeadline) or after a claim.
      */
     private void timerLoop() {
-        while (!terminate && System.currentTimeMillis() < reshuffleTime) {
-            updateFreezeDisplay(); // we added a penalty timer
-            if (this.setClaimed.isEmpty()) { // go to sleep only if there is no player who claims set!
-                sleepUntilWokenOrTimeout();
+        long deadline = 0; // update the displays right away
+        while (!terminate && env.clock.currentTimeMillis() < reshuffleTime && table.countSets() > 0) {
+            long now = env.clock.currentTimeMillis();
+            if (now >= deadline) {
+                updateFreezeDisplay(); // we added a penalty timer
+                updateTimerDisplay(false);
+            }
+            if (now >= latencyReportTime) { // a report on demand while the game runs
+                env.events.log(Level.SEVERE, claimLatencyReport());
+                latencyReportTime = now + env.config.latencyReportMillis;
             }
-            updateTimerDisplay(false);
-            if (!this.setClaimed.isEmpty()) {  // if a set is claimed
-                synchronized (table) {   // lock on table - players cant place token while cards is not on the table.
-                    removeCardsFromTable();
+            deadline = nextDeadline(env.clock.currentTimeMillis());
+            sleepUntilWokenOrTimeout(deadline); // returns immediately if a set was already claimed.
+            if (!this.claims.isEmpty()) {  // if a set is claimed
+                deadline = 0; // show the reset countdown right away.
+                Claim claim;
+                table.lock.lock();   // lock on table - players cant place token while the cards change.
+                try {
+                    claim = removeCardsFromTable();
                     placeCardsOnTable();
+                } finally {
+                    table.lock.unlock();
                 }
+                if (claim != null) claim.complete(); // wake up the player.
+                table.showChanges(); // the table delays, while the players press the other slots.
             }
         }
     }
 
+    /**
+     * Updates the freeze displays that changed and unfreezes the players whose freeze ended.
+     */
     private void updateFreezeDisplay(){
-        for (Player p :players){
-            long toDisplay = p.unfreezeTime - System.currentTimeMillis();
-            env.ui.setFreeze(p.id,toDisplay);
-            if(toDisplay<=0){
-                p.inFreeze = false;
-            }
+        freezes.advance(env.clock.currentTimeMillis(), this::updateFreeze);
+    }
+
+    /**
+     * Shows the freeze of a player and schedules its next change: the next second shown, or its end.
+     *
+     * @param id - the id of the player (just given a point or a penalty, or due in the freezes).
+     */
+    private void updateFreeze(int id) {
+        Player p = players[id];
+        long now = env.clock.currentTimeMillis();
+        long toDisplay = p.unfreezeTime - now;
+        env.ui.setFreeze(id, toDisplay);
+        if (toDisplay <= 0) {
+            p.inFreeze = false;
+            return;
         }
+        freezes.schedule(id, env.config.headless ? p.unfreezeTime : Math.min(p.unfreezeTime, nextTick(p.unfreezeTime, now, 1000)));
     }
 
     /**
@@ -113,16 +206,15 @@ public class Dealer implements Runnable {
      */
     public void terminate() { // terminate
         for (Player p : players) {
-            synchronized (p) {
                 p.terminate();
                 p.getThread().interrupt();
-            }
         }
             try {
                 players[players.length-1].getThread().join();
             } catch (InterruptedException ignored) {
             }
         terminate = true;
+        LockSupport.unpark(dealerThread);
         }
 
 
@@ -148,53 +240,80 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, 1).size() == 0;
+        return terminate || !remainingSets.anySet(); // no set is left in the deck and on the table.
+    }
+
+    /**
+     * Submits a set claimed by a player to the dealer and wakes the dealer up.
+     *
+     * @param player       - the player claiming the set (the cards are the ones in its queue when the dealer checks them).
+     * @param pressedNanos - the time (System.nanoTime) the player placed the last token of the claim.
+     * @return - the claim, through which the calling thread can await the verdict.
+     */
+    public Claim submitClaim(Player player, long pressedNanos) {
+        env.journal.record(Journal.Type.CLAIM, player.id);
+        Claim claim = new Claim(player, pressedNanos, claimLatencies);
+        claims.offer(claim);
+        LockSupport.unpark(dealerThread);
+        return claim;
+    }
+
+    /**
+     * Returns a report of the latencies of the claims so far, from the key press to the player being woken up.
+     *
+     * @return - a multi-line report, one line per phase.
+     */
+    public String claimLatencyReport() {
+        return claimLatencies.report();
     }
 
     /**
      * Checks cards should be removed from the table and removes them.
+     *
+     * @return - the claim that was checked (to be completed once the cards are replaced), or null if none.
      */
-    private void removeCardsFromTable() { // we implemented
-        System.out.println(setClaimed.size() + "the size of the queue");
-        Player p;
-        synchronized (Lock) {
-            Player temp = setClaimed.removeFirst(); // get the first player in the queue.
-            p = temp;
-        }
-        System.out.println(setClaimed.size() + "the size of the queue after");
-        System.out.println("player " +p.id+" removed");
-        if (p.queueSet.size() < 3) { // checking if a player claimed a set that is not valid anymore because one of the cards used.
-            System.out.println("no set no penalty ");
+    private Claim removeCardsFromTable() { // we implemented
+        Claim claim = claims.poll(); // get the first claim in the queue.
+        if (claim == null) return null;
+        claim.dequeued();
+        Player p = claim.player;
+        Claim.Verdict verdict;
+        env.events.log(Event.CLAIM_DEQUEUED, p.id);
+        if (p.queueSet.size() < claimed.length) { // checking if a player claimed a set that is not valid anymore because one of the cards used.
+            env.events.log(Event.STALE_CLAIM, p.id);
+            env.journal.record(Journal.Type.STALE, p.id);
+            verdict = Claim.Verdict.STALE;
         }
         else {
-            int[] toTestSet = new int[3]; // converting to array to check the set.
-            for (int i = 0; i < 3; i++) {
-                toTestSet[i] = (int) p.queueSet.toArray()[i];
-            }
-            if (env.util.testSet(toTestSet)) { // if a legal set was found.
-                for (int i : toTestSet) {
-                    System.out.println(i);
-                }
+            int n = 0;
+            for (int card : p.queueSet)
+                claimed[n++] = card;
+            // the log and the journal show the first three cards of the claim.
+            int first = claimed[0], second = n > 1 ? claimed[1] : -1, third = n > 2 ? claimed[2] : -1;
+            boolean legal = n == 3 ? env.util.testSet(first, second, third) : env.util.testSet(claimed);
+            if (legal) { // if a legal set was found.
                 updateTimerDisplay(true); // update the timer.
                 p.point(); // give a point to the player
-                System.out.println("point!  " + p.id);
-                for (int i : toTestSet) {
-                    this.removeCard(i);
-                }
+                updateFreeze(p.id);
+                env.events.log(Event.POINT, p.id, first, second, third);
+                env.journal.record(Journal.Type.POINT, p.id, -1, first, second, third);
+                for (int card : claimed)
+                    this.removeCard(card);
+                verdict = Claim.Verdict.POINT;
             }
             else{ // if the set is illegal
                 p.penalty();
-                System.out.println("penalty! " + toTestSet[0] + " " + toTestSet[1] + " " + toTestSet[2] + " " + p.id);
+                updateFreeze(p.id);
+                verdict = Claim.Verdict.PENALTY;
+                env.events.log(Event.PENALTY, p.id, first, second, third);
+                env.journal.record(Journal.Type.PENALTY, p.id, -1, first, second, third);
             }
         }
-        synchronized (p) {
-            p.notifyAll();
-            System.out.println("wake up");
-        }
+        claim.verified(verdict);
+        return claim;
     }
 
     public void removeCard(int card){
-        System.out.println(card);
         int slot = table.cardToSlot[card]; // converting card to slot.
         for (Player p: players) {
             if (p.queueSet.contains(card)) {
@@ -203,53 +322,67 @@ public class Dealer implements Runnable {
                 table.removeToken(p.id,slot);
             }
         }
-        table.removeCard(slot); // update table.
+        table.takeCard(slot); // update table (shown by table.showChanges).
+        remainingSets.remove(card); // the card leaves the game.
     }
 
     /**
-     * Check if any cards can be removed from the deck and placed on the table.
+     * Check if any cards can be removed from the deck and placed on the table. Each empty slot gets a random card drawn
+     * from the deck (see Deck::draw). The cards are shown by table.showChanges, once the table lock is released.
      */
     public void placeCardsOnTable() { // we implemented
-        if(deck.size()==0){
-            return;}
-        Collections.shuffle(deck);
-        for (int i =0 ; i<12;i++){
-            if(table.slotToCard[i]==null){ // if the card is missing in this slot.
-                table.placeCard(deck.get(deck.size()-1),i); // place card on the table .
-                deck.remove(deck.size()-1); // remove the card from the deck.
+        table.lock.lock();
+        try {
+            for (int i = 0; i < env.config.tableSize && !deck.isEmpty(); i++) {
+                if (table.slotToCard[i] == null) { // if the card is missing in this slot.
+                    table.dealCard(deck.draw(), i); // place card on the table (it is removed from the deck).
+                }
             }
+        } finally {
+            table.lock.unlock();
         }
     }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Sleep until a deadline or until the thread is awakened for some purpose (a claim).
+     *
+     * @param deadline - the time to wake up at (see nextDeadline).
      */
-    private void sleepUntilWokenOrTimeout() {
-
-        long timeLeft = this.reshuffleTime-System.currentTimeMillis();
-        boolean warn = (timeLeft<env.config.turnTimeoutWarningMillis);
-        synchronized (this) {
-            if (warn){ // if theres less than 5 seconds.
-                try {
-                    wait(10);
-                } catch (InterruptedException ignore) {
-                }
-            }
-
-            if(env.config.pointFreezeMillis<900||env.config.penaltyFreezeMillis<900){
-                try {
-                    wait(Math.min(env.config.pointFreezeMillis,env.config.penaltyFreezeMillis));
-                } catch (InterruptedException ignore) {
-                }
-            }
-            else {
-                try {
-                    wait(900);
-                } catch (InterruptedException ignore) {
-                }
-            }
+    private void sleepUntilWokenOrTimeout(long deadline) {
+        if (claims.isEmpty()) { // submitClaim unparks the dealer.
+            env.clock.parkUntil(this, deadline);
+        }
+    }
 
+    /**
+     * Computes the next time the dealer has to do something by itself: reshuffle, unfreeze a player, or update a
+     * display when the value it shows changes (the countdown seconds, its hundredths while warning, at most once per
+     * frame, and the seconds of each freeze). Nothing is shown in headless mode, so only the first two count there.
+     * The periodic report of the claim latencies is due at its own deadline, if configured.
+     *
+     * @param now - the current time.
+     * @return - the earliest deadline after now.
+     */
+    private long nextDeadline(long now) {
+        long deadline = reshuffleTime;
+        if (!env.config.headless) {
+            long timeLeft = reshuffleTime - now;
+            long warning = env.config.turnTimeoutWarningMillis;
+            if (timeLeft < warning)
+                deadline = Math.min(deadline, nextTick(reshuffleTime, now, Math.max(10, 1000 / env.config.frameRate)));
+            else
+                deadline = Math.min(Math.min(deadline, reshuffleTime - warning + 1), nextTick(reshuffleTime, now, 1000));
         }
+        deadline = Math.min(deadline, latencyReportTime);
+        return Math.min(deadline, freezes.nextDeadline()); // the freezes (see updateFreeze)
+    }
+
+    /**
+     * @return - the next time a countdown to end shown in ticks (i.e. (end - time) / tick) changes.
+     */
+    private static long nextTick(long end, long now, long tick) {
+        long left = end - now;
+        return left <= 0 ? now : end - left / tick * tick + 1;
     }
 
     /**
@@ -257,13 +390,13 @@ public class Dealer implements Runnable {
      */
     public void updateTimerDisplay(boolean reset) {
         if(reset){
-            long timeLeft = reshuffleTime - System.currentTimeMillis();
+            long timeLeft = reshuffleTime - env.clock.currentTimeMillis();
             long timePassed = env.config.turnTimeoutMillis - timeLeft;
             env.ui.setCountdown(env.config.turnTimeoutMillis,false);
             reshuffleTime += timePassed;
         }
         else{
-            long timeLeft = this.reshuffleTime-System.currentTimeMillis();
+            long timeLeft = this.reshuffleTime-env.clock.currentTimeMillis();
             boolean warn = (timeLeft<env.config.turnTimeoutWarningMillis);
             env.ui.setCountdown(timeLeft,warn);
         }
@@ -273,24 +406,26 @@ public class Dealer implements Runnable {
      * Returns all the cards from the table to the deck.
      */
     private void removeAllCardsFromTable() {
-        System.out.println("time reset!!");
-        if(deck.size()==0){ // no need to replace the cards if the deck is empty.
+        env.events.log(Event.RESHUFFLE);
+        env.journal.record(Journal.Type.RESHUFFLE, -1);
+        if(deck.isEmpty()){ // no need to replace the cards if the deck is empty.
             return;
         }
-        synchronized (table) { // dont allow playres to press while there is not cards on the table
-            for (int i = 0; i < 12; i++) {
-                deck.add(table.slotToCard[i]); // add the card to the deck
-                int card = table.slotToCard[i]; // the card that we return to the deck
-                table.slotToCard[i] = null;  // remove from table
-                table.cardToSlot[card] = null; // remove from the slot
-                env.ui.removeCard(i); // graphics update.
-            }
-            for (Player p : players) { // removing the tokens placed.
+        table.lock.lock(); // dont allow playres to press while there is not cards on the table
+        try {
+            for (Player p : players) { // removing the tokens placed, while their cards are still on the table.
                 p.resetQueue();
                 p.removeTokens();
                 p.afterPenalty = false;
             }
+            for (int i = 0; i < env.config.tableSize; i++) {
+                if (table.slotToCard[i] == null) continue;
+                deck.add(table.takeCard(i)); // remove from the table and return the card to the deck
+            }
+        } finally {
+            table.lock.unlock();
         }
+        table.showChanges();
     }
     /**
      * Check who is/are the winner/s and displays them.
@@ -311,8 +446,10 @@ public class Dealer implements Runnable {
             }
         }
         int [] winnersId = new int[winners.size()]; // convert to array fpr the graphics.
-        for(int i =0; i<winnersId.length;i++)
+        for(int i =0; i<winnersId.length;i++) {
             winnersId[i] = winners.get(i);
+            env.journal.record(Journal.Type.WINNER, winnersId[i], -1, players[winnersId[i]].getScore());
+        }
         env.ui.announceWinner(winnersId);
     }
 
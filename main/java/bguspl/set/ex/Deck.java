@@ -0,0 +1,93 @@
+package bguspl.set.ex;
+
+import bguspl.set.Util;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The dealer's deck of cards. The card ids are kept in a primitive array and drawn by a lazy Fisher-Yates shuffle:
+ * each draw swaps a random card of the deck with the last one and takes it, so drawing and returning a card take O(1)
+ * time and the deck is never shuffled as a whole.
+ *
+ * @inv 0 <= size <= cards.length
+ */
+public class Deck {
+
+    /**
+     * The card ids in the deck (the first size entries), in no particular order.
+     */
+    private final int[] cards;
+
+    /**
+     * The number of cards in the deck.
+     */
+    private int size;
+
+    /**
+     * The source of the draws (seeded by the caller: the same seed draws the same cards as long as the same cards are
+     * returned in the same order).
+     */
+    private final Random random;
+
+    /**
+     * The class constructor. The deck starts full.
+     *
+     * @param deckSize - the number of cards in the game (config.deckSize).
+     * @param random   - the source of the draws.
+     */
+    public Deck(int deckSize, Random random) {
+        this.cards = new int[deckSize];
+        this.random = random;
+        for (int card = 0; card < deckSize; ++card)
+            cards[card] = card;
+        size = deckSize;
+    }
+
+    /**
+     * Draws a random card from the deck.
+     *
+     * @return - the card id, or -1 if the deck is empty.
+     * @post - the card is no longer in the deck.
+     */
+    public int draw() {
+        if (size == 0) return -1;
+        int drawn = random.nextInt(size);
+        int card = cards[drawn];
+        cards[drawn] = cards[--size];
+        cards[size] = card;
+        return card;
+    }
+
+    /**
+     * Returns a card to the deck (e.g. from the table, when the cards are reshuffled).
+     *
+     * @param card - the card id (not in the deck).
+     * @post - the card is in the deck.
+     */
+    public void add(int card) {
+        cards[size++] = card;
+    }
+
+    /**
+     * @return - the number of cards in the deck.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Finds legal sets among the cards in the deck, straight from the deck's array.
+     *
+     * @param util  - the util object (for finding sets).
+     * @param count - the maximum number of sets to find.
+     * @return - a list of up to count legal sets (see Util::findSets).
+     */
+    public List<int[]> findSets(Util util, int count) {
+        return util.findSets(cards, size, count);
+    }
+}
@@ -1,10 +1,14 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.EventLog.Event;
+import bguspl.set.ThreadLogger;
 
 import java.util.LinkedList;
-import java.util.List;
+import java.util.Properties;
 import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * This class manages the players' threads and data
@@ -32,12 +36,12 @@ public class Player implements Runnable {
     /**
      * The thread representing the current player.
      */
-    private Thread playerThread;
+    private volatile Thread playerThread;
 
     /**
      * The thread of the AI (computer) player (an additional thread used to generate key presses).
      */
-    private Thread aiThread;
+    private volatile Thread aiThread;
 
     /**
      * True iff the player is human (not a computer player).
@@ -50,7 +54,24 @@ public class Player implements Runnable {
     private volatile boolean terminate;
 
 
-    public Queue<Integer> queueSet; // we created a public set
+    public Queue<Integer> queueSet; // we created a public set (a claim is config.featureSize cards)
+
+    /**
+     * True iff a last token (of a claim) was placed since the player thread last checked for a claim (see keyPressed).
+     */
+    private volatile boolean claimReady;
+
+    /**
+     * The time (System.nanoTime) the last token of a claim was placed.
+     */
+    private volatile long claimPressedNanos;
+
+    /**
+     * The number of claims made (last tokens placed, see keyPressed) and the number of them the player thread answered
+     * (submitted to the dealer and got the verdict, or declined because the claim broke before it was checked).
+     */
+    private volatile long claimsMade;
+    private volatile long claimsAnswered;
 
     /**
      * The current score of the player.
@@ -59,7 +80,7 @@ public class Player implements Runnable {
 
 
     /**
-     * the slots between 0 - 12 we placed the tokens .
+     * the slots (between 0 and config.tableSize - 1) we placed the tokens on.
      */
     public boolean[] tokens;
     /**
@@ -74,6 +95,12 @@ public class Player implements Runnable {
 
     public boolean afterPenalty;
 
+    /**
+     * The source of the ai's key presses (seeded by the game's seed and the id; the presses also depend on the table,
+     * so only the stream repeats).
+     */
+    private final Random random;
+
     /**
      * The class constructor.
      *
@@ -84,16 +111,31 @@ public class Player implements Runnable {
      * @param human  - true iff the player is a human player (i.e. input is provided manually, via the keyboard).
      */
     public Player(Env env, Dealer dealer, Table table, int id, boolean human) {
+        this(env, dealer, table, id, human, env.config.randomSeed);
+    }
+
+    /**
+     * The class constructor, for a game of a run (see Config::gameSeed).
+     *
+     * @param env    - the environment object.
+     * @param dealer - the dealer object.
+     * @param table  - the table object.
+     * @param id     - the id of the player.
+     * @param human  - true iff the player is a human player (i.e. input is provided manually, via the keyboard).
+     * @param seed   - the seed of the game.
+     */
+    public Player(Env env, Dealer dealer, Table table, int id, boolean human, long seed) {
         this.env = env;
         this.table = table;
         this.id = id;
         this.human = human;
-        this.tokens = new boolean[12]; // where the tokens being placed
+        this.tokens = new boolean[env.config.tableSize]; // where the tokens being placed
         this.dealer = dealer; // we added.
         this.inFreeze = false; // we added.
-        this.unfreezeTime = System.currentTimeMillis();
+        this.unfreezeTime = env.clock.currentTimeMillis();
         this.queueSet = new LinkedList<>();
         this.afterPenalty = false;
+        this.random = new Random(seed + id + 1);
     }
 
 
@@ -107,29 +149,33 @@ public class Player implements Runnable {
         if (!human) createArtificialIntelligence();
 
         while (!terminate) {
-            if (queueSet.size() == 3 && !afterPenalty) { // a set is claimed
-                synchronized (dealer) { // declare a set to the dealer and wake him
-                    dealer.notify();
-                }
+            if (!claimReady) { // sleep until the last token of a claim is placed (keyPressed unparks this thread).
+                LockSupport.park(this);
+                Thread.interrupted(); // interrupts only come with terminate, which is checked by the loop.
+                continue;
+            }
+            claimReady = false;
+            boolean claimed;
+            long claim;
+            table.lock.lock(); // the queue is changed by the dealer and the input threads under the table lock.
+            try {
+                claim = claimsMade;
+                claimed = queueSet.size() == env.config.featureSize && !afterPenalty;
+            } finally {
+                table.lock.unlock();
+            }
+            if (claimed) { // a set is claimed
                 try {
-                    synchronized (this) { // add this set to the dealer queue
-                        System.out.println("hey " + id);
-                        synchronized (dealer.Lock) {
-                            dealer.setClaimed.add(this);
-                        }
-                        wait();
-                    }
-                    System.out.println("player back to work " + id);
+                    env.events.log(Event.CLAIM, id);
+                    dealer.submitClaim(this, claimPressedNanos).await(); // declare a set to the dealer and wait for the verdict.
+                    env.events.log(Event.PLAYER_BACK, id);
                 } catch (InterruptedException ignore) {
                     break;
                 }
-                if (!this.human) {
-                    synchronized (aiThread) {
-                        aiThread.notify();
-                        System.out.println("ai back to work!" + " " + id);
-                    }
-                }
+                if (!this.human) env.events.log(Event.AI_BACK, id);
             }
+            claimsAnswered = claim; // a declined claim (e.g. a card of it was taken meanwhile) is answered as well.
+            if (!this.human) LockSupport.unpark(aiThread); // the ai thread waits for the answer.
         }
 
         if (!human){
@@ -152,93 +198,122 @@ public class Player implements Runnable {
         env.logger.info("thread "+ id + Thread.currentThread().getName() + " terminated.");
     }
 
-    private void createArtificialIntelligence() {
-        createArtificialIntelligence(0);
+    /**
+     * Creates the strategy of the ai according to Config::playerStrategy (e.g. "human,thinkMillis=800").
+     */
+    private Strategy createStrategy() {
+        return createStrategy(env, env.config.playerStrategy(id), random, "player " + (id + 1));
+    }
+
+    /**
+     * Creates a strategy from its specification (see Config::playerStrategy).
+     *
+     * @param env           - the environment object.
+     * @param specification - the name of the strategy and its parameters, e.g. "human,thinkMillis=800".
+     * @param random        - the source of the strategy's randomness.
+     * @param owner         - who plays the strategy (for the log).
+     */
+    static Strategy createStrategy(Env env, String specification, Random random, String owner) {
+        String[] spec = specification.split(",");
+        Properties parameters = new Properties();
+        for (int i = 1; i < spec.length; i++) {
+            String[] parameter = spec[i].split("=", 2);
+            parameters.setProperty(parameter[0].trim(), parameter.length > 1 ? parameter[1].trim() : "");
+        }
+        String name = spec[0].trim().toLowerCase();
+        switch (name) {
+            case "perfect":
+                return new StrategyPerfect(env.util, Long.parseLong(parameters.getProperty("thinkMillis", "0")));
+            case "human":
+                return new StrategyHuman(env.util, random,
+                        Long.parseLong(parameters.getProperty("thinkMillis", "1500")),
+                        Double.parseDouble(parameters.getProperty("thinkSigma", "0.5")),
+                        Double.parseDouble(parameters.getProperty("errorRate", "0.05")));
+            default:
+                if (!name.equals("random"))
+                    env.logger.severe("warning: unknown strategy " + name + " for " + owner + ", using random.");
+                // no artificial delays in headless mode.
+                return new StrategyRandom(random, env.config.featureSize, Long.parseLong(parameters.getProperty("thinkMillis", env.config.headless ? "0" : "1")));
+        }
     }
 
     /**
-     * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly generates
-     * key presses. If the queue of key presses is full, the thread waits until it is not full.
+     * Creates an additional thread for an AI (computer) player. The main loop of this thread asks the strategy for
+     * the next key press whenever the cards on the table change, and waits for the cards to change when there is
+     * nothing to press. After a claim, the thread waits for the verdict.
      */
-    private void createArtificialIntelligence(int x) {
-        // note: this is a very very smart AI (!)
-        aiThread = new Thread(() -> {
+    private void createArtificialIntelligence() {
+        Strategy strategy = createStrategy();
+        aiThread = ThreadLogger.newThread(() -> {
             env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+            int[] slots = new int[env.config.tableSize]; // the view of the table of the ai (see Table::snapshot)
 
             while (!terminate) {
-                if (x == 0) {   // random presses
-                    for (int i = 0; i < 3; i++) {
-                        int slot = (int) (Math.random() * 12); //  generate random number between 0 and 12.
-                        this.keyPressed(slot);
-                        try {
-                            synchronized (this) {
-                                wait(1);
-                            }
-                        } catch (InterruptedException ignored) {
-                        }
-
-                        // stop pressing if you claim a set
-                        try {
-                            synchronized (this) {
-                                if (!this.afterPenalty && queueSet.size() == 3) {
-                                    synchronized (dealer) { // declare a set to the dealer and wake him up
-                                        dealer.notify();
-                                    }
-                                    System.out.println("ai sleep" + id);
-                                    wait();
-                                }
-                            }
-                        } catch (InterruptedException ignore) { break;
-                        }
-                    }
-                } // end of random presses.
-
-                if (x == 1) {// smart ai!!! allways the right set
-                    List<Integer> cards = new LinkedList<Integer>();
-                    while (cards.size() != 12) {
-                        cards = new LinkedList<Integer>();
-                        for (int i = 0; i < 12; i++) {
-                            if (table.slotToCard[i] != null) {
-                                cards.add(table.slotToCard[i]);
-                            }
-                        }
+                try {
+                    long frozen = frozenMillis();
+                    if (frozen >= 0) { // presses are ignored until the dealer unfreezes the player.
+                        env.clock.sleep(Math.max(1, frozen));
+                        continue;
                     }
-                    List<int[]> set = env.util.findSets(cards, 1);
-                    if (set.isEmpty()) { // if there is not a legal set on the table;
-                        try {
-                            System.out.println("no sets on table");
-                            Thread.sleep(env.config.turnTimeoutMillis + 2000); // wait to the next turn
-                        } catch (InterruptedException ignored) {
-                        }
-                    } else {
-                        for (int i = 0; i < 3 && table.cardToSlot[set.get(0)[i]] != null; i++) {
-                            keyPressed(table.cardToSlot[set.get(0)[i]]);
-
-                            if (!this.afterPenalty && queueSet.size() == 3) { // stop pressing if you claim a set
-                                try {
-                                    synchronized (this) {
-                                        System.out.println("ai sleep" + id);
-                                        wait();
-                                    }
-                                } catch (InterruptedException ignore) {
-                                }
-                            }
-                            try {
-                                Thread.sleep(10);
-                            } catch (InterruptedException ignored) {
-                            }
-
-                        }
+                    long version = table.snapshot(slots, null);
+                    int slot = strategy.nextPress(slots, tokens);
+                    if (slot < 0) { // nothing to press until the cards change
+                        env.events.log(Event.NO_SETS);
+                        table.awaitChange(version, env.config.turnTimeoutMillis);
+                        continue;
                     }
-
+                    long think = strategy.thinkMillis();
+                    if (think > 0 && table.awaitChange(version, think) != version)
+                        continue; // the cards changed while thinking: decide again.
+                    if (table.version() != version) continue;
+                    keyPressed(slot);
+                    awaitVerdict(); // the player thread declares the set
+                } catch (InterruptedException ignored) {
+                    break;
                 }
-
             }
             env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
-        }, "computer-" + id);
+        }, "computer-" + id, env.config.virtualThreads, env.logger);
         aiThread.start();
     }
 
+    /**
+     * @return - the time left until the player is unfrozen (0 if it is due, -1 if the player is not frozen).
+     */
+    private long frozenMillis() {
+        table.lock.lock();
+        try {
+            return inFreeze ? Math.max(0, unfreezeTime - env.clock.currentTimeMillis()) : -1;
+        } finally {
+            table.lock.unlock();
+        }
+    }
+
+    /**
+     * Called by the ai thread after a key press: if the press claimed a set, parks until the player thread answered
+     * the claim (it unparks the ai thread when the verdict arrives, or when it declines a claim that broke meanwhile).
+     * The wait is for the claim itself rather than for the queue, which the dealer may change without a verdict.
+     *
+     * @throws InterruptedException - if the ai thread was interrupted while waiting.
+     */
+    private void awaitVerdict() throws InterruptedException {
+        while (!terminate && claimsAnswered < claimsMade) {
+            env.events.log(Event.AI_SLEEP, id);
+            LockSupport.park(this);
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Creates the player thread (a virtual thread if configured so). The dealer starts it.
+     *
+     * @return - the player thread.
+     */
+    Thread createThread() {
+        playerThread = ThreadLogger.newThread(this, "player", env.config.virtualThreads, env.logger);
+        return playerThread;
+    }
+
     /**
      * Called when the game should be terminated due to an external event.
      */
@@ -261,10 +336,7 @@ public class Player implements Runnable {
     }
 
     public void removeFromQueue(int card) {
-        if (queueSet.contains(card)) {
-
-            queueSet.remove(card);
-        }
+        queueSet.remove(card); // the card object, not an index (does nothing if the card is not in the queue).
     }
 
 
@@ -274,20 +346,29 @@ public class Player implements Runnable {
      * @param slot - the slot corresponding to the key pressed.
      */
     public void keyPressed(int slot) {
-        synchronized (table) {
-            if (inFreeze || table.slotToCard[slot] == null) {
-                return; // player in freeze cant press.
+        table.lock.lock();
+        try {
+            if (inFreeze || table.slotToCard[slot] == null || !table.isSettled(slot)) {
+                return; // player in freeze cant press, nor press a card that is not shown yet.
             }
-            if (!tokens[slot] && queueSet.size() < 3) { // if the slot was'nt pressed before.
+            if (!tokens[slot] && queueSet.size() < env.config.featureSize) { // if the slot was'nt pressed before.
                 tokens[slot] = true;
                 table.placeToken(id, slot);// updating the table.
                 queueSet.add(table.slotToCard[slot]); // update the tokens queue
+                if (queueSet.size() == env.config.featureSize && !afterPenalty) { // wake up the player thread to claim the set.
+                    claimPressedNanos = System.nanoTime();
+                    claimsMade++; // under the table lock
+                    claimReady = true;
+                    LockSupport.unpark(playerThread);
+                }
             } else if (tokens[slot]) { // if the token is already pressed.
                 tokens[slot] = false;
                 table.removeToken(id, slot);
                 removeFromQueue(table.slotToCard[slot]); // update the queue
                 afterPenalty = false;
             }
+        } finally {
+            table.lock.unlock();
         }
 
     }
@@ -302,7 +383,7 @@ public class Player implements Runnable {
         int ignored = table.countCards(); // this part is just for demonstration in the unit tests
         env.ui.setScore(id, ++score);
         inFreeze = true;
-        unfreezeTime = System.currentTimeMillis() + env.config.pointFreezeMillis; //freeze player for one second
+        unfreezeTime = env.clock.currentTimeMillis() + env.config.pointFreezeMillis; //freeze player for one second
     }
 
     /**
@@ -311,7 +392,7 @@ public class Player implements Runnable {
     public void penalty() {
         inFreeze = true;
         afterPenalty = true;
-        this.unfreezeTime = System.currentTimeMillis() + env.config.penaltyFreezeMillis; //freeze player
+        this.unfreezeTime = env.clock.currentTimeMillis() + env.config.penaltyFreezeMillis; //freeze player
 
     }
     public boolean getTerminate(){
@@ -323,8 +404,19 @@ public class Player implements Runnable {
         return score;
     }
 
+    /**
+     * Sets the score of the player (when a replayed game is restored to a keyframe, see Replay).
+     *
+     * @param score - the score.
+     */
+    void setScore(int score) {
+        this.score = score;
+        env.ui.setScore(id, score);
+    }
+
     public void removeTokens() {
-        for (int i = 0; i < 12; i++) {
+        for (int i = 0; i < tokens.length; i++) {
+            if (!tokens[i]) continue; // only the tokens actually placed (each removal is journaled).
             tokens[i] = false;
             table.removeToken(id, i);
         }
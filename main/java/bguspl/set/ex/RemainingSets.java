@@ -0,0 +1,118 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+/**
+ * This class keeps track of the legal sets that can still be formed from the cards left in the game (i.e. the cards
+ * in the dealer's deck and on the table). Moving cards between the deck and the table does not change it, only
+ * removing cards from the game does, so it is updated in O(cards left) per removed card and answers whether the
+ * game can go on in O(1).
+ *
+ * @inv cards[position[card]] == card iff inGame[card]
+ */
+public class RemainingSets {
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * True iff the card is still in the game (in the deck or on the table).
+     */
+    private final boolean[] inGame;
+
+    /**
+     * The cards still in the game (the first size entries).
+     */
+    private final int[] cards;
+
+    /**
+     * The index of each card still in the game in cards.
+     */
+    private final int[] position;
+
+    /**
+     * The number of cards still in the game.
+     */
+    private int size;
+
+    /**
+     * The number of legal sets that can be formed from the cards still in the game. When sets do not consist of three
+     * cards (config.featureSize != 3) this is only 1 if there is at least one set and 0 otherwise.
+     */
+    private long sets;
+
+    /**
+     * The class constructor. All cards of the deck start in the game.
+     *
+     * @param env - the game environment object.
+     */
+    public RemainingSets(Env env) {
+        this.env = env;
+        int deckSize = env.config.deckSize;
+        inGame = new boolean[deckSize];
+        cards = new int[deckSize];
+        position = new int[deckSize];
+        for (int card = 0; card < deckSize; ++card) {
+            inGame[card] = true;
+            cards[card] = card;
+            position[card] = card;
+        }
+        size = deckSize;
+
+        if (env.config.featureSize == 3) {
+            for (int i = 0; i < size; ++i)
+                for (int j = i + 1; j < size; ++j)
+                    if (completesSet(cards[i], cards[j])) sets++;
+        } else sets = countByFinding();
+    }
+
+    /**
+     * Removes a card from the game (e.g. when it was part of a legal set claimed by a player).
+     *
+     * @param card - the card id.
+     * @post - the card is no longer in the game and no set containing it is counted.
+     */
+    public void remove(int card) {
+        if (!inGame[card]) return;
+
+        // swap the removed card with the last card in the game
+        inGame[card] = false;
+        int last = cards[--size];
+        cards[position[card]] = last;
+        position[last] = position[card];
+
+        if (env.config.featureSize == 3) {
+            for (int i = 0; i < size; ++i)
+                if (completesSet(card, cards[i])) sets--;
+        } else sets = countByFinding();
+    }
+
+    /**
+     * @return - true iff at least one legal set can still be formed from the cards left in the game.
+     */
+    public boolean anySet() {
+        return sets > 0;
+    }
+
+    /**
+     * @return - the number of cards still in the game.
+     */
+    public int countCards() {
+        return size;
+    }
+
+    /**
+     * Checks if the two cards form a legal set with a third card in the game whose id is higher than other's, so that
+     * each set is counted once for a given card (or pair of cards).
+     */
+    private boolean completesSet(int card, int other) {
+        int third = env.util.completeSet(card, other);
+        return third > other && inGame[third];
+    }
+
+    private long countByFinding() {
+        return env.util.findSets(cards, size, 1).size();
+    }
+}
@@ -0,0 +1,266 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UserInterfaceHeadless;
+import bguspl.set.UtilCompletion;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import static bguspl.set.UserInterfaceServer.*;
+
+/**
+ * A computer player that plays a game served by UserInterfaceServer from another process: it joins as one of the
+ * human players, rebuilds the table from the updates of the server and presses the slots a strategy (see
+ * Player::createStrategy) chooses. After each press it waits for the server to show its effect (or for the table to
+ * change) before deciding again, like the ai thread of a local player waits for the table.
+ * <p>
+ * When the game ends or the time is up, it prints the presses it sent and the updates it received per second.
+ */
+public class RemoteBot {
+
+    /**
+     * How long to wait for the effect of a press before deciding again (a press can be ignored, e.g. while the
+     * cards of its slot change).
+     */
+    private static final long PRESS_TIMEOUT_MILLIS = 100;
+
+    private final SocketChannel channel;
+    private final Selector selector;
+    private final ByteBuffer in = ByteBuffer.allocate(1 << 16);
+    private final ByteBuffer out = ByteBuffer.allocate(CLIENT_MESSAGE_SIZE);
+
+    private final int player;
+    private final String strategySpec;
+    private Strategy strategy;
+
+    /**
+     * The table as the server showed it, and the tokens of the player.
+     */
+    private int[] slots = new int[0];
+    private boolean[] tokens = new boolean[0];
+
+    private boolean joined;
+    private boolean frozen;
+    private boolean over;
+
+    /**
+     * The time the last press was sent, if the bot waits for its effect (-1 otherwise), and the time the next press
+     * is due once the strategy thought about it (-1 if it did not start thinking).
+     */
+    private long pressed = -1;
+    private long pressAt = -1;
+
+    private long presses;
+    private long updates;
+
+    public RemoteBot(InetSocketAddress address, int player, String strategySpec) throws IOException {
+        this.player = player;
+        this.strategySpec = strategySpec;
+        channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    /**
+     * Plays until the game is over, the server closes the connection or the time is up.
+     *
+     * @param millis - the time to play (Long.MAX_VALUE for no limit).
+     */
+    public void play(long millis) throws IOException {
+        send(JOIN, player);
+        long start = System.currentTimeMillis();
+        long end = millis >= Long.MAX_VALUE - start ? Long.MAX_VALUE : start + millis;
+        for (long now = System.currentTimeMillis(); now < end && !over; now = System.currentTimeMillis()) {
+            long wait = end - now;
+            if (pressed >= 0) wait = Math.min(wait, pressed + PRESS_TIMEOUT_MILLIS - now);
+            if (pressAt >= 0) wait = Math.min(wait, pressAt - now);
+            if (wait > 0) selector.select(wait);
+            selector.selectedKeys().clear();
+            if (!receive()) break;
+            decide(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Reads and applies the messages that arrived.
+     *
+     * @return - false iff the server closed the connection.
+     */
+    private boolean receive() throws IOException {
+        int read;
+        while ((read = channel.read(in)) > 0) {
+            in.flip();
+            while (apply()) updates++;
+            in.compact();
+        }
+        return read >= 0;
+    }
+
+    /**
+     * Applies the next message in the buffer, if it arrived whole.
+     *
+     * @return - true iff a message was applied.
+     */
+    private boolean apply() throws IOException {
+        if (in.remaining() < 3) return false;
+        int start = in.position();
+        byte type = in.get(start);
+        int size;
+        switch (type) {
+            case JOINED: case CLEAR: size = 3; break;
+            case TOKEN: case TIMER: size = 6; break;
+            case WELCOME: case CARD: case SCORE: case FREEZE: size = 7; break;
+            case WINNERS: size = 3 + 2 * in.getShort(start + 1); break;
+            default: throw new IOException("unknown message " + type);
+        }
+        if (in.remaining() < size) return false;
+        in.get();
+        switch (type) {
+            case WELCOME: welcome(in.getShort(), in.getShort(), in.get(), in.get()); break;
+            case JOINED:
+                joined = in.getShort() == player;
+                if (!joined) throw new IOException("player " + (player + 1) + " was refused");
+                break;
+            case CARD: {
+                int slot = in.getShort();
+                slots[slot] = in.getInt();
+                changed();
+                break;
+            }
+            case TOKEN: {
+                int who = in.getShort(), slot = in.getShort();
+                boolean placed = in.get() != 0;
+                if (who == player) {
+                    tokens[slot] = placed;
+                    pressed = -1;
+                }
+                break;
+            }
+            case CLEAR: {
+                int slot = in.getShort();
+                if (slot < 0) Arrays.fill(tokens, false);
+                else tokens[slot] = false;
+                changed();
+                break;
+            }
+            case FREEZE: {
+                int who = in.getShort(), millis = in.getInt();
+                if (who == player) {
+                    frozen = millis > 0;
+                    changed();
+                }
+                break;
+            }
+            default:
+                if (type == WINNERS) over = true;
+                in.position(start + size); // nothing else to track
+        }
+        return true;
+    }
+
+    private void welcome(int players, int tableSize, int featureSize, int featureCount) {
+        if (player >= players) throw new IllegalArgumentException("the game has " + players + " players");
+        slots = new int[tableSize];
+        Arrays.fill(slots, -1);
+        tokens = new boolean[tableSize];
+
+        // a configuration of the served game, for the strategy (e.g. finding sets)
+        Properties properties = new Properties();
+        properties.setProperty("FeatureSize", Integer.toString(featureSize));
+        properties.setProperty("FeatureCount", Integer.toString(featureCount));
+        properties.setProperty("Rows", "1");
+        properties.setProperty("Columns", Integer.toString(tableSize));
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", "1");
+        properties.setProperty("PlayerKeys1", "");
+        properties.setProperty("Headless", "True");
+        properties.setProperty("Journal", "False");
+        properties.setProperty("LogLevel", "WARNING");
+        Logger logger = Logger.getLogger("SetGameRemoteBot");
+        Config config = new Config(logger, properties);
+        Env env = new Env(logger, config, new UserInterfaceHeadless(), new UtilCompletion(config));
+        strategy = Player.createStrategy(env, strategySpec, new Random(), "remote player " + (player + 1));
+    }
+
+    /**
+     * The table or the freeze changed: the press being thought about (or waited for) is decided again.
+     */
+    private void changed() {
+        pressed = -1;
+        pressAt = -1;
+    }
+
+    /**
+     * Sends the next press of the strategy, if it is time to.
+     */
+    private void decide(long now) throws IOException {
+        if (!joined || frozen || over) return;
+        if (pressed >= 0) {
+            if (now < pressed + PRESS_TIMEOUT_MILLIS) return; // the press was not shown yet.
+            pressed = -1;
+        }
+        if (pressAt < 0) pressAt = now + strategy.thinkMillis();
+        if (now < pressAt) return;
+        pressAt = -1;
+        int slot = strategy.nextPress(slots, tokens);
+        if (slot < 0) return; // nothing to press until the table changes
+        send(PRESS, slot);
+        presses++;
+        pressed = now;
+    }
+
+    private void send(byte type, int value) throws IOException {
+        out.clear();
+        out.put(type).putShort((short) value).flip();
+        while (out.hasRemaining())
+            if (channel.write(out) < 0) throw new EOFException();
+    }
+
+    public void close() throws IOException {
+        selector.close();
+        channel.close();
+    }
+
+    /**
+     * Plays a served game as a human player.
+     *
+     * @param args - host:port player [strategy] [seconds], e.g. "127.0.0.1:7777 1 perfect,thinkMillis=200 60" (the
+     *             players are counted from 1, as on the screen).
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: java bguspl.set.ex.RemoteBot host:port player [strategy] [seconds]");
+            System.exit(1);
+        }
+        int colon = args[0].lastIndexOf(':');
+        InetSocketAddress address = new InetSocketAddress(args[0].substring(0, colon), Integer.parseInt(args[0].substring(colon + 1)));
+        int player = Integer.parseInt(args[1]) - 1;
+        String strategy = args.length > 2 ? args[2] : "random";
+        long millis = args.length > 3 ? Long.parseLong(args[3]) * 1000 : Long.MAX_VALUE; // the whole game by default
+
+        RemoteBot bot = new RemoteBot(address, player, strategy);
+        long start = System.nanoTime();
+        try {
+            bot.play(millis);
+        } finally {
+            bot.close();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("player %d: %d presses (%.1f/s), %d updates (%.1f/s) in %.1f s%n", player + 1,
+                bot.presses, bot.presses / elapsed, bot.updates, bot.updates / elapsed, elapsed);
+    }
+}
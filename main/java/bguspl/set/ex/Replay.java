@@ -0,0 +1,419 @@
+package bguspl.set.ex;
+
+import bguspl.set.ClockSimulated;
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.EventLog;
+import bguspl.set.Journal;
+import bguspl.set.JournalReader;
+import bguspl.set.UserInterface;
+import bguspl.set.UserInterfaceDecorator;
+import bguspl.set.UserInterfaceHeadless;
+import bguspl.set.UserInterfaceSwing;
+import bguspl.set.Util;
+import bguspl.set.UtilCompletion;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Replays a game recorded in a journal (see JournalMapped). The recorded transitions are applied in order to a Table
+ * and Players of the replay's own, through the methods the dealer and the players use in a live game, and timed by a
+ * simulated clock: there are no sleeps, so a replay runs as fast as the table and the user interface allow (or at a
+ * given pace, for watching it).
+ * <p>
+ * The dealer's decisions (which claim came first, whether it was a set) are taken from the journal rather than
+ * re-executed: they depend on how the threads of the recorded game interleaved, which no seed reproduces. Nor do the
+ * deals after the first one, which depend on the cards claimed: a new run with the seed in the journal
+ * (Config::randomSeed) only repeats the first deal and the computer players' random streams.
+ * <p>
+ * When a replay is created it indexes the journal with keyframes (the cards, tokens and scores every
+ * keyframeInterval records), so that seek can jump to any record by restoring the nearest keyframe before it.
+ */
+public class Replay {
+
+    /**
+     * The game environment object (its clock is the simulated clock).
+     */
+    private final Env env;
+
+    private final ClockSimulated clock;
+    private final JournalReader journal;
+
+    /**
+     * Game entities.
+     */
+    private final Table table;
+    private final Player[] players;
+
+    /**
+     * The keyframes, one every keyframeInterval records (the first one is the empty table before the first record).
+     */
+    private final int keyframeInterval;
+    private final List<Keyframe> keyframes = new ArrayList<>();
+
+    /**
+     * The winners recorded since the last game started.
+     */
+    private final List<Integer> winners = new ArrayList<>();
+
+    /**
+     * The index of the next record to apply.
+     */
+    private long next;
+
+    /**
+     * The class constructor: creates the players and indexes the journal.
+     *
+     * @param env              - the environment object (its clock must be clock).
+     * @param clock            - the simulated clock of the replay.
+     * @param journal          - the journal to replay.
+     * @param players          - the array to create the players in (shared with the user interface).
+     * @param keyframeInterval - the number of records between keyframes.
+     */
+    public Replay(Env env, ClockSimulated clock, JournalReader journal, Player[] players, int keyframeInterval) {
+        this.env = env;
+        this.clock = clock;
+        this.journal = journal;
+        this.table = new Table(env);
+        this.players = players;
+        this.keyframeInterval = keyframeInterval;
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, null, table, i, false);
+        index();
+    }
+
+    /**
+     * The state of the table and the players at some record: the card in each slot (-1 if none), the tokens of each
+     * player, the scores and the winners announced so far.
+     */
+    private static class Keyframe {
+        long record;
+        long time;
+        final int[] slotToCard;
+        final boolean[][] tokens;
+        final int[] scores;
+        final List<Integer> winners;
+
+        Keyframe(int tableSize, int players) {
+            slotToCard = new int[tableSize];
+            Arrays.fill(slotToCard, -1);
+            tokens = new boolean[players][tableSize];
+            scores = new int[players];
+            winners = new ArrayList<>();
+        }
+
+        Keyframe(Keyframe other) {
+            record = other.record;
+            time = other.time;
+            slotToCard = other.slotToCard.clone();
+            tokens = new boolean[other.tokens.length][];
+            Arrays.setAll(tokens, i -> other.tokens[i].clone());
+            scores = other.scores.clone();
+            winners = new ArrayList<>(other.winners);
+        }
+
+        /**
+         * Applies a record to this state (the same transitions apply applies to the table and the players).
+         */
+        void apply(JournalReader journal, long record) {
+            int player = journal.player(record), slot = journal.slot(record);
+            switch (journal.type(record)) {
+                case GAME_START:
+                    Arrays.fill(slotToCard, -1);
+                    for (boolean[] playerTokens : tokens) Arrays.fill(playerTokens, false);
+                    Arrays.fill(scores, 0);
+                    winners.clear();
+                    break;
+                case DEAL: slotToCard[slot] = journal.a(record); break;
+                case REMOVE: slotToCard[slot] = -1; break;
+                case TOKEN: tokens[player][slot] = true; break;
+                case UNTOKEN: tokens[player][slot] = false; break;
+                case POINT: scores[player]++; break;
+                case WINNER: winners.add(player); break;
+                default: // claims, stale claims and reshuffles change nothing by themselves
+            }
+            this.record = record + 1;
+            time = journal.time(record);
+        }
+    }
+
+    /**
+     * Builds the keyframe index in a single pass over the journal (without touching the table).
+     */
+    private void index() {
+        Keyframe state = new Keyframe(env.config.tableSize, players.length);
+        state.time = journal.records > 0 ? journal.time(0) : clock.currentTimeMillis();
+        for (long record = 0; record < journal.records; ++record) {
+            if (record % keyframeInterval == 0) keyframes.add(new Keyframe(state));
+            state.apply(journal, record);
+        }
+    }
+
+    /**
+     * @return - the number of records in the journal.
+     */
+    public long records() {
+        return journal.records;
+    }
+
+    /**
+     * @return - the index of the next record to apply.
+     */
+    public long position() {
+        return next;
+    }
+
+    /**
+     * Applies the next record of the journal.
+     *
+     * @return - false iff the journal has ended.
+     */
+    public boolean step() {
+        if (next >= journal.records) return false;
+        apply(next++);
+        return true;
+    }
+
+    /**
+     * Brings the table and the players to their state before a record: restores the nearest keyframe, unless the
+     * record is ahead of the current position and no keyframe is closer to it, and applies the records up to it.
+     *
+     * @param record - the index of the record (journal.records for the end of the game).
+     */
+    public void seek(long record) {
+        record = Math.max(0, Math.min(record, journal.records));
+        if (record == 0 && keyframes.isEmpty()) return;
+        Keyframe keyframe = keyframes.get((int) (Math.min(record, journal.records - 1) / keyframeInterval));
+        if (record < next || keyframe.record > next) restore(keyframe);
+        while (next < record) apply(next++);
+    }
+
+    private void apply(long record) {
+        advanceTo(journal.time(record));
+        int player = journal.player(record), slot = journal.slot(record), card = journal.a(record);
+        switch (journal.type(record)) {
+            case GAME_START:
+                clear();
+                winners.clear();
+                break;
+            case DEAL:
+                table.placeCard(card, slot);
+                break;
+            case REMOVE: {
+                Integer removed = table.slotToCard[slot];
+                if (removed != null) // a card off the table is in no claim (as in Dealer::removeCard).
+                    for (Player p : players) p.removeFromQueue(removed);
+                table.removeCard(slot);
+                break;
+            }
+            case TOKEN:
+                players[player].keyPressed(slot);
+                break;
+            case UNTOKEN:
+                removeToken(players[player], slot);
+                break;
+            case POINT:
+                players[player].point();
+                players[player].inFreeze = false; // the journal decides which presses were accepted.
+                break;
+            case PENALTY:
+                players[player].penalty();
+                players[player].inFreeze = false;
+                break;
+            case WINNER:
+                winners.add(player);
+                break;
+            case GAME_END:
+                env.ui.announceWinner(winners.stream().mapToInt(Integer::intValue).toArray());
+                break;
+            default: // claims, stale claims and reshuffles change nothing by themselves
+        }
+    }
+
+    private void removeToken(Player player, int slot) {
+        if (!player.tokens[slot]) return;
+        player.tokens[slot] = false;
+        Integer card = table.slotToCard[slot];
+        if (card != null) player.removeFromQueue(card); // older journals remove the tokens after the cards (see REMOVE).
+        table.removeToken(player.id, slot);
+    }
+
+    /**
+     * Replays the whole journal from its start and checks the table and the players against the index: at every
+     * keyframe and at the end they must hold the keyframe's cards, tokens and scores, and the winners recorded for
+     * each game must be the players with the top score.
+     *
+     * @return - the mismatches found (none if the replay agrees with the journal).
+     */
+    public List<String> verify() {
+        List<String> mismatches = new ArrayList<>();
+        Keyframe state = new Keyframe(env.config.tableSize, players.length);
+        if (!keyframes.isEmpty()) restore(keyframes.get(0));
+        for (long record = 0; record < journal.records; ++record) {
+            if (record % keyframeInterval == 0) compare(keyframes.get((int) (record / keyframeInterval)), mismatches);
+            state.apply(journal, record);
+            apply(next++);
+            if (journal.type(record) == Journal.Type.GAME_END) {
+                int top = Arrays.stream(players).mapToInt(Player::getScore).max().orElse(0);
+                for (int player : winners)
+                    if (players[player].getScore() != top)
+                        mismatches.add("record " + record + ": winner " + (player + 1) + " scored " + players[player].getScore() + ", not " + top);
+            }
+        }
+        state.record = journal.records;
+        compare(state, mismatches);
+        return mismatches;
+    }
+
+    /**
+     * Adds the differences between the table and the players and a keyframe to mismatches.
+     */
+    private void compare(Keyframe keyframe, List<String> mismatches) {
+        for (int slot = 0; slot < keyframe.slotToCard.length; ++slot) {
+            Integer card = table.slotToCard[slot];
+            if ((card == null ? -1 : card) != keyframe.slotToCard[slot])
+                mismatches.add("record " + keyframe.record + ": slot " + slot + " holds " + card + ", not " + keyframe.slotToCard[slot]);
+        }
+        for (Player player : players) {
+            if (!Arrays.equals(player.tokens, keyframe.tokens[player.id]))
+                mismatches.add("record " + keyframe.record + ": the tokens of player " + (player.id + 1) + " differ");
+            if (player.getScore() != keyframe.scores[player.id])
+                mismatches.add("record " + keyframe.record + ": player " + (player.id + 1) + " scored " + player.getScore() + ", not " + keyframe.scores[player.id]);
+        }
+    }
+
+    /**
+     * Removes all the cards and tokens from the table and resets the scores.
+     */
+    private void clear() {
+        for (Player player : players) {
+            player.removeTokens();
+            player.resetQueue();
+            player.afterPenalty = false;
+            player.inFreeze = false;
+            player.setScore(0);
+        }
+        for (int slot = 0; slot < env.config.tableSize; ++slot)
+            if (table.slotToCard[slot] != null) table.removeCard(slot);
+    }
+
+    private void restore(Keyframe keyframe) {
+        clear();
+        advanceTo(keyframe.time);
+        for (int slot = 0; slot < keyframe.slotToCard.length; ++slot)
+            if (keyframe.slotToCard[slot] >= 0) table.placeCard(keyframe.slotToCard[slot], slot);
+        for (Player player : players) {
+            for (int slot = 0; slot < keyframe.tokens[player.id].length; ++slot)
+                if (keyframe.tokens[player.id][slot]) {
+                    player.tokens[slot] = true;
+                    player.queueSet.add(table.slotToCard[slot]);
+                    table.placeToken(player.id, slot);
+                }
+            player.setScore(keyframe.scores[player.id]);
+        }
+        winners.clear();
+        winners.addAll(keyframe.winners);
+        next = keyframe.record;
+    }
+
+    private void advanceTo(long time) {
+        long millis = time - clock.currentTimeMillis();
+        if (millis > 0) clock.advance(millis); // claims are recorded by the players, slightly out of time order.
+    }
+
+    /**
+     * Replays a journal file:
+     * <pre>
+     * java bguspl.set.ex.Replay journal [--seek record] [--ui] [--speed factor] [--keyframes interval] [--verify]
+     * </pre>
+     * Without --ui the replay runs headless at full speed and reports its throughput. With --ui it is shown in the
+     * game window, paced by the recorded times (divided by --speed, 1 by default; 0 for no pacing). With --verify the
+     * whole journal is replayed and checked against its index (see verify), and the exit status tells if it agreed.
+     *
+     * @param args - the journal file and the options.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String file = null;
+        long seek = 0;
+        boolean ui = false, verify = false;
+        double speed = -1;
+        int keyframeInterval = 4096;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--seek": seek = Long.parseLong(args[++i]); break;
+                case "--ui": ui = true; break;
+                case "--speed": speed = Double.parseDouble(args[++i]); break;
+                case "--keyframes": keyframeInterval = Integer.parseInt(args[++i]); break;
+                case "--verify": verify = true; break;
+                default: file = args[i];
+            }
+        }
+        if (file == null) {
+            System.err.println("usage: java bguspl.set.ex.Replay journal [--seek record] [--ui] [--speed factor] [--keyframes interval] [--verify]");
+            System.exit(1);
+        }
+        if (speed < 0) speed = ui ? 1 : 0;
+
+        JournalReader journal = new JournalReader(Paths.get(file));
+        Properties properties = journal.properties();
+        properties.setProperty("HumanPlayers", "0"); // nobody plays a replay
+        properties.setProperty("ComputerPlayers", Integer.toString(journal.players));
+        for (int i = 1; i <= journal.players; i++)
+            properties.setProperty("PlayerKeys" + i, "");
+        properties.setProperty("TableDelaySeconds", "0");
+        properties.setProperty("Journal", "False");
+        properties.setProperty("LogLevel", "WARNING");
+        Logger logger = Logger.getLogger("SetGameReplay");
+        Config config = new Config(logger, properties);
+
+        Util util = new UtilCompletion(config);
+        EventLog events = new EventLog(logger);
+        Player[] players = new Player[config.players];
+        UserInterface userInterface = ui
+                ? new UserInterfaceDecorator(events, util, new UserInterfaceSwing(events, config, players))
+                : new UserInterfaceHeadless();
+        ClockSimulated clock = new ClockSimulated(journal.records > 0 ? journal.time(0) : 0);
+        Env env = new Env(logger, config, userInterface, util, clock, events, Journal.NONE);
+
+        long start = System.nanoTime();
+        Replay replay = new Replay(env, clock, journal, players, keyframeInterval);
+        long indexed = System.nanoTime();
+        if (verify) {
+            List<String> mismatches = replay.verify();
+            mismatches.stream().limit(20).forEach(System.out::println);
+            System.out.printf("verified %d records (%d keyframes) in %.3f ms: %d mismatches%n", replay.records(),
+                    replay.keyframes.size(), (System.nanoTime() - indexed) / 1e6, mismatches.size());
+            System.exit(mismatches.isEmpty() ? 0 : 1);
+        }
+        replay.seek(seek);
+        long sought = System.nanoTime();
+        long startTime = clock.currentTimeMillis(), startNanos = System.nanoTime();
+        while (replay.position() < replay.records()) {
+            if (speed > 0) { // sleep until the next record is due
+                long due = startNanos + (long) ((journal.time(replay.position()) - startTime) * 1e6 / speed);
+                long nanos = due - System.nanoTime();
+                if (nanos > 0) Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+            }
+            replay.step();
+        }
+        long end = System.nanoTime();
+
+        long applied = replay.records() - seek;
+        System.out.printf("indexed %d records (%d keyframes) in %.3f ms, sought to record %d in %.3f ms%n",
+                replay.records(), replay.keyframes.size(), (indexed - start) / 1e6, seek, (sought - indexed) / 1e6);
+        System.out.printf("replayed %d records in %.3f ms (%.0f records/sec)%n",
+                applied, (end - sought) / 1e6, applied / ((end - sought) / 1e9));
+        System.out.printf("scores: %s (random seed of the recorded game: %d)%n",
+                Arrays.toString(Arrays.stream(players).mapToInt(Player::getScore).toArray()), journal.randomSeed);
+        if (ui) {
+            Thread.sleep(config.endGamePauseMillies);
+            env.ui.dispose();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package bguspl.set.ex;
+
+/**
+ * An interface for the strategy of a computer player: which slot to press next, given a view of the table, and how
+ * long to think before pressing it. The player's ai thread asks again whenever the cards on the table change (see
+ * Table::awaitChange), so a strategy is only consulted as often as there is something new to decide.
+ */
+public interface Strategy {
+
+    /**
+     * Decides which slot to press next.
+     *
+     * @param slots  - the card in each slot (-1 if none), as of the last change of the cards on the table.
+     * @param tokens - the slots the player has a token on (pressing such a slot removes the token).
+     * @return - the slot to press, or -1 if there is nothing to press until the cards on the table change.
+     */
+    int nextPress(int[] slots, boolean[] tokens);
+
+    /**
+     * @return - the time to think before pressing the slot chosen by nextPress (in game milliseconds). If the cards
+     * on the table change meanwhile, the press is decided again.
+     */
+    long thinkMillis();
+}
@@ -0,0 +1,45 @@
+package bguspl.set.ex;
+
+import bguspl.set.Util;
+
+import java.util.Random;
+
+/**
+ * A strategy that plays like a person: it looks for a legal set like StrategyPerfect, but thinks before every press
+ * for a random time (log-normally distributed around a median, like human reaction times) and sometimes presses a
+ * wrong card (then it notices the mistake and removes the token, as StrategyPerfect removes tokens off the set).
+ */
+public class StrategyHuman extends StrategyPerfect {
+
+    private final Random random;
+    private final long medianMillis;
+    private final double sigma;
+    private final double errorRate;
+
+    /**
+     * @param util         - the util object (for finding sets).
+     * @param random       - the source of the think times and the mistakes.
+     * @param medianMillis - the median time to think before a press.
+     * @param sigma        - the spread of the think times (the standard deviation of their logarithm).
+     * @param errorRate    - the probability of pressing a wrong card instead of the next card of the set.
+     */
+    public StrategyHuman(Util util, Random random, long medianMillis, double sigma, double errorRate) {
+        super(util, medianMillis);
+        this.random = random;
+        this.medianMillis = medianMillis;
+        this.sigma = sigma;
+        this.errorRate = errorRate;
+    }
+
+    @Override
+    protected int choose(int[] slots, boolean[] tokens, int[] set, int slot) {
+        if (random.nextDouble() >= errorRate) return slot;
+        int wrong = random.nextInt(slots.length); // a slip: any other card without a token.
+        return slots[wrong] >= 0 && !tokens[wrong] && !contains(set, slots[wrong]) ? wrong : slot;
+    }
+
+    @Override
+    public long thinkMillis() {
+        return (long) (medianMillis * Math.exp(sigma * random.nextGaussian()));
+    }
+}
@@ -0,0 +1,75 @@
+package bguspl.set.ex;
+
+import bguspl.set.Util;
+
+import java.util.List;
+
+/**
+ * A strategy that always claims a legal set: it finds one among the cards on the table, removes its tokens from
+ * other cards and places tokens on the set. When there is no set on the table it waits for the cards to change.
+ */
+public class StrategyPerfect implements Strategy {
+
+    private final Util util;
+    private final long thinkMillis;
+    private int[] cards = new int[0];
+
+    /**
+     * @param util        - the util object (for finding sets).
+     * @param thinkMillis - the time to think before each press.
+     */
+    public StrategyPerfect(Util util, long thinkMillis) {
+        this.util = util;
+        this.thinkMillis = thinkMillis;
+    }
+
+    @Override
+    public int nextPress(int[] slots, boolean[] tokens) {
+        int[] set = findSet(slots);
+        for (int slot = 0; slot < slots.length; slot++)
+            if (tokens[slot] && (set == null || !contains(set, slots[slot])))
+                return slot; // a token that is not on the set.
+        if (set == null) return -1;
+        for (int card : set) {
+            int slot = slotOf(slots, card);
+            if (!tokens[slot]) return choose(slots, tokens, set, slot);
+        }
+        return -1; // the set is claimed, the verdict will change the table.
+    }
+
+    /**
+     * Chooses the slot to press when the next card of the set is in slot (overridden to make mistakes).
+     */
+    protected int choose(int[] slots, boolean[] tokens, int[] set, int slot) {
+        return slot;
+    }
+
+    /**
+     * @return - a legal set among the cards in the slots, or null if there is none.
+     */
+    protected int[] findSet(int[] slots) {
+        if (cards.length < slots.length) cards = new int[slots.length];
+        int n = 0;
+        for (int card : slots)
+            if (card >= 0) cards[n++] = card;
+        List<int[]> sets = util.findSets(cards, n, 1);
+        return sets.isEmpty() ? null : sets.get(0);
+    }
+
+    protected static boolean contains(int[] set, int card) {
+        for (int member : set)
+            if (member == card) return true;
+        return false;
+    }
+
+    protected static int slotOf(int[] slots, int card) {
+        for (int slot = 0; slot < slots.length; slot++)
+            if (slots[slot] == card) return slot;
+        return -1;
+    }
+
+    @Override
+    public long thinkMillis() {
+        return thinkMillis;
+    }
+}
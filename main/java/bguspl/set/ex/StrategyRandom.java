@@ -0,0 +1,53 @@
+package bguspl.set.ex;
+
+import java.util.Random;
+
+/**
+ * A strategy that presses random cards: it places tokens on random cards until it has a claim (config.featureSize
+ * cards), and if the claim was wrong it removes one of its tokens and goes on.
+ */
+public class StrategyRandom implements Strategy {
+
+    private final Random random;
+    private final int claimSize;
+    private final long thinkMillis;
+
+    /**
+     * @param random      - the source of the presses.
+     * @param claimSize   - the number of cards in a claim (config.featureSize).
+     * @param thinkMillis - the time between presses.
+     */
+    public StrategyRandom(Random random, int claimSize, long thinkMillis) {
+        this.random = random;
+        this.claimSize = claimSize;
+        this.thinkMillis = thinkMillis;
+    }
+
+    @Override
+    public int nextPress(int[] slots, boolean[] tokens) {
+        int placed = 0, cards = 0;
+        for (int slot = 0; slot < slots.length; slot++) {
+            if (tokens[slot]) placed++;
+            else if (slots[slot] >= 0) cards++;
+        }
+        if (placed >= claimSize) return pick(slots, tokens, placed, true); // a wrong claim: remove a token.
+        if (cards == 0) return placed > 0 ? pick(slots, tokens, placed, true) : -1;
+        return pick(slots, tokens, cards, false);
+    }
+
+    /**
+     * @return - a random slot among the ones with a token (if tokened) or with a card and no token (otherwise).
+     */
+    private int pick(int[] slots, boolean[] tokens, int count, boolean tokened) {
+        int skip = random.nextInt(count);
+        for (int slot = 0; slot < slots.length; slot++)
+            if (tokened ? tokens[slot] : !tokens[slot] && slots[slot] >= 0)
+                if (skip-- == 0) return slot;
+        return -1;
+    }
+
+    @Override
+    public long thinkMillis() {
+        return thinkMillis;
+    }
+}
@@ -1,10 +1,19 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.Journal;
 
+import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 /**
@@ -29,6 +38,39 @@ public class Table {
      */
     protected final Integer[] cardToSlot; // slot per card (if any)
 
+    /**
+     * The legal sets among the cards currently on the table, each sorted by card id. Maintained incrementally as cards
+     * are placed and removed (guarded by the table lock).
+     */
+    private final List<int[]> sets;
+
+    /**
+     * The table lock: players cannot place tokens while the dealer changes the cards on the table. A ReentrantLock
+     * rather than the table monitor, so that virtual threads blocking on it do not pin their carrier thread.
+     */
+    final ReentrantLock lock;
+
+    /**
+     * The published copy of the settled cards on the table, for readers that do not take the table lock (see snapshot):
+     * the card in each slot and the slot of each card (-1 if none, or not settled yet). Written under the table lock, read through a seqlock:
+     * the version is odd while the arrays change, and even (and larger) once they are consistent again.
+     */
+    private final int[] publishedSlots;
+    private final int[] publishedCards;
+    private volatile long version;
+
+    /**
+     * The changes of the cards on the table that were not shown yet, in order: {slot, card} for a card placed and
+     * {slot, -1} for a card removed, and the number of them per slot (see showChanges). Guarded by the table lock.
+     */
+    private final Queue<int[]> changes;
+    private final int[] pending;
+
+    /**
+     * The threads waiting for the version to change (see awaitChange).
+     */
+    private final Set<Thread> waiters = ConcurrentHashMap.newKeySet();
+
     /**
      * Constructor for testing.
      *
@@ -41,6 +83,16 @@ public class Table {
         this.env = env;
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
+        this.sets = new ArrayList<>();
+        this.lock = new ReentrantLock();
+        this.publishedSlots = new int[slotToCard.length];
+        this.publishedCards = new int[cardToSlot.length];
+        this.changes = new ArrayDeque<>();
+        this.pending = new int[slotToCard.length];
+        Arrays.setAll(publishedSlots, slot -> slotToCard[slot] == null ? -1 : slotToCard[slot]);
+        Arrays.setAll(publishedCards, card -> cardToSlot[card] == null ? -1 : cardToSlot[card]);
+        if (Arrays.stream(slotToCard).anyMatch(Objects::nonNull))
+            findAllSets();
     }
 
     /**
@@ -57,8 +109,7 @@ public class Table {
      * This method prints all possible legal sets of cards that are currently on the table.
      */
     public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
+        sets().forEach(set -> {
             StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
             List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
             int[][] features = env.util.cardsToFeatures(set);
@@ -66,6 +117,34 @@ public class Table {
         });
     }
 
+    /**
+     * Count the number of legal sets currently on the table.
+     *
+     * @return - the number of legal sets among the cards on the table.
+     */
+    public int countSets() {
+        lock.lock();
+        try {
+            return sets.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the legal sets currently on the table.
+     *
+     * @return - a new list of the legal sets among the cards on the table (each one sorted by card id).
+     */
+    public List<int[]> sets() {
+        lock.lock();
+        try {
+            return new ArrayList<>(sets);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Count the number of cards currently on the table.
      *
@@ -80,36 +159,181 @@ public class Table {
     }
 
     /**
-     * Places a card on the table in a grid slot.
+     * Places a card on the table in a grid slot, and shows it (see dealCard and showChanges).
      * @param card - the card id to place in the slot.
      * @param slot - the slot in which the card should be placed.
      *
      * @post - the card placed is on the table, in the assigned slot.
      */
     public void placeCard(int card, int slot) { // we implemented.
+        lock.lock();
         try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
-
-        cardToSlot[card] = slot;
-        slotToCard[slot] = card;
-        env.ui.placeCard(card, slot); // updating the graphics.
-
+            dealCard(card, slot);
+        } finally {
+            lock.unlock();
+        }
+        showChanges();
     }
 
     /**
-     * Removes a card from a grid slot on the table.
+     * Removes a card from a grid slot on the table, and shows it (see takeCard and showChanges).
      * @param slot - the slot from which to remove the card.
      */
     public void removeCard(int slot) { // we implemented.
+        lock.lock();
         try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
-        env.ui.removeCard(slot);
+            takeCard(slot);
+        } finally {
+            lock.unlock();
+        }
+        showChanges();
+    }
+
+    /**
+     * Places a card in a slot of the table, without waiting for the table delay or showing it: the slot is not
+     * settled (players cannot press it) until showChanges shows it. Called under the table lock.
+     * @param card - the card id to place in the slot.
+     * @param slot - the slot in which the card should be placed (empty).
+     */
+    void dealCard(int card, int slot) {
+        cardToSlot[card] = slot;
+        slotToCard[slot] = card;
+        addSetsOf(card); // update the sets on the table.
+        env.journal.record(Journal.Type.DEAL, -1, slot, card);
+        changes.offer(new int[]{slot, card});
+        pending[slot]++;
+    }
+
+    /**
+     * Removes the card from a slot of the table, without waiting for the table delay or showing it: the slot is not
+     * settled until showChanges shows it. Called under the table lock.
+     * @param slot - the slot from which to remove the card (not empty).
+     * @return - the card removed.
+     */
+    int takeCard(int slot) {
         int card = slotToCard[slot]; // the card in the slot
         slotToCard[slot] = null;  // clear the table;
         cardToSlot[card] = null;
+        removeSetsOf(card); // update the sets on the table.
+        publish(slot, card, false); // readers stop seeing the card right away.
+        env.journal.record(Journal.Type.REMOVE, -1, slot, card);
+        changes.offer(new int[]{slot, -1});
+        pending[slot]++;
+        return card;
+    }
 
+    /**
+     * Shows the changes made by dealCard and takeCard, one table delay each, in the order they were made. The table
+     * lock is only held to show each change (never while waiting), so the players keep pressing the settled slots
+     * meanwhile. A slot is settled again once its last change is shown. Called by the thread that made the changes,
+     * without holding the table lock.
+     */
+    public void showChanges() {
+        while (true) {
+            int[] change;
+            lock.lock();
+            try {
+                change = changes.poll();
+            } finally {
+                lock.unlock();
+            }
+            if (change == null) return;
+
+            try {
+                env.clock.sleep(env.config.tableDelayMillis);
+            } catch (InterruptedException ignored) {}
+
+            int slot = change[0], card = change[1];
+            lock.lock();
+            try {
+                if (card >= 0) env.ui.placeCard(card, slot); // updating the graphics.
+                else env.ui.removeCard(slot);
+                if (--pending[slot] == 0 && slotToCard[slot] != null)
+                    publish(slot, slotToCard[slot], true); // settled: readers see the card.
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @param slot - a slot of the table.
+     * @return - true iff all the changes of the slot were shown, i.e. players may press it (called under the lock).
+     */
+    public boolean isSettled(int slot) {
+        return pending[slot] == 0;
+    }
+
+    /**
+     * Publishes a change of the cards on the table to the snapshot readers (called under the table lock).
+     *
+     * @param slot   - the slot that changed.
+     * @param card   - the card placed in the slot or removed from it.
+     * @param placed - true iff the card was placed (false iff removed).
+     */
+    private void publish(int slot, int card, boolean placed) {
+        long current = version;
+        version = current + 1; // odd: readers retry until the change is complete.
+        VarHandle.storeStoreFence();
+        publishedSlots[slot] = placed ? card : -1;
+        publishedCards[card] = placed ? slot : -1;
+        version = current + 2;
+        if (!waiters.isEmpty()) waiters.forEach(LockSupport::unpark);
+    }
+
+    /**
+     * Copies a consistent (torn-free) view of the settled cards on the table, without taking the table lock.
+     *
+     * @param slotToCard - an array of tableSize ints to fill with the card in each slot (-1 if none), or null.
+     * @param cardToSlot - an array of deckSize ints to fill with the slot of each card (-1 if none), or null.
+     * @return - the version of the view (it grows with every change of the cards on the table).
+     */
+    public long snapshot(int[] slotToCard, int[] cardToSlot) {
+        while (true) {
+            long seen = version;
+            if ((seen & 1) == 0) {
+                if (slotToCard != null) System.arraycopy(publishedSlots, 0, slotToCard, 0, publishedSlots.length);
+                if (cardToSlot != null) System.arraycopy(publishedCards, 0, cardToSlot, 0, publishedCards.length);
+                VarHandle.loadLoadFence();
+                if (version == seen) return seen;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * @return - the version of the cards on the table (see snapshot).
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Waits until the cards on the table change, i.e. until their version is different from a given one.
+     *
+     * @param seen          - the version the caller has seen (see snapshot).
+     * @param timeoutMillis - the maximal time to wait (of the game clock).
+     * @return - the new version (or seen, if the timeout passed first).
+     * @throws InterruptedException - if the thread was interrupted while waiting.
+     */
+    public long awaitChange(long seen, long timeoutMillis) throws InterruptedException {
+        long deadline = env.clock.currentTimeMillis() + timeoutMillis;
+        Thread current = Thread.currentThread();
+        waiters.add(current); // before checking the version, so that a change right after the check unparks us.
+        try {
+            while (version == seen && env.clock.currentTimeMillis() < deadline) {
+                env.clock.parkUntil(this, deadline);
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+        } finally {
+            waiters.remove(current);
+        }
+        long now = version;
+        while ((now & 1) != 0) { // a change is in progress.
+            Thread.onSpinWait();
+            now = version;
+        }
+        return now;
     }
 
     /**
@@ -118,6 +342,7 @@ public class Table {
      * @param slot   - the slot on which to place the token.
      */
     public void placeToken(int player, int slot) {
+        env.journal.record(Journal.Type.TOKEN, player, slot, slotToCard[slot]);
         env.ui.placeToken(player,slot);
     }
 
@@ -128,8 +353,91 @@ public class Table {
      * @return       - true iff a token was successfully removed.
      */
     public boolean removeToken(int player, int slot) {
+        Integer card = slotToCard[slot];
+        env.journal.record(Journal.Type.UNTOKEN, player, slot, card == null ? -1 : card);
         env.ui.removeToken(player,slot);
         return true;
     }
 
+    /**
+     * Adds the legal sets formed by a card that was just placed on the table with the cards already there.
+     * @param card - the card placed on the table.
+     */
+    private void addSetsOf(int card) {
+        if (env.config.featureSize < 3) { // sets are not made of cards and their completion.
+            findAllSets();
+            return;
+        }
+        if (env.config.featureSize > 3) {
+            addLargerSetsOf(card);
+            return;
+        }
+        for (Integer other : slotToCard)
+            if (other != null && other != card) {
+                int third = env.util.completeSet(card, other);
+                if (third > other && cardToSlot[third] != null) { // each new set is seen from both other cards.
+                    int[] set = {card, other, third};
+                    Arrays.sort(set);
+                    sets.add(set);
+                }
+            }
+    }
+
+    /**
+     * Adds the legal sets of more than three cards formed by a card that was just placed on the table: the card is
+     * completed with each combination of featureSize - 2 other cards, and only completions higher than the other cards
+     * count, so that each new set is seen once (from all its other cards but the highest).
+     * @param card - the card placed on the table.
+     */
+    private void addLargerSetsOf(int card) {
+        int[] others = new int[slotToCard.length];
+        int n = 0;
+        for (Integer other : slotToCard)
+            if (other != null && other != card) others[n++] = other;
+
+        int r = env.config.featureSize - 2;
+        int[] combination = new int[r];
+        int[] chosen = new int[r + 1];
+        for (int i = 0; i < r; ++i)
+            combination[i] = i;
+        chosen[r] = card;
+        while (combination[r - 1] < n) {
+            int highest = -1;
+            for (int i = 0; i < r; ++i) {
+                chosen[i] = others[combination[i]];
+                highest = Math.max(highest, chosen[i]);
+            }
+            int last = env.util.completeSet(chosen);
+            if (last > highest && last != card && cardToSlot[last] != null) {
+                int[] set = Arrays.copyOf(chosen, r + 2);
+                set[r + 1] = last;
+                Arrays.sort(set);
+                sets.add(set);
+            }
+
+            // generate next combination in lexicographic order
+            int t = r - 1;
+            while (t != 0 && combination[t] == n - r + t) --t;
+            combination[t]++;
+            for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+        }
+    }
+
+    /**
+     * Removes the legal sets containing a card that was just removed from the table.
+     * @param card - the card removed from the table.
+     */
+    private void removeSetsOf(int card) {
+        if (env.config.featureSize < 3) {
+            findAllSets();
+            return;
+        }
+        sets.removeIf(set -> Arrays.binarySearch(set, card) >= 0); // the sets are sorted.
+    }
+
+    private void findAllSets() {
+        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
+        sets.clear();
+        sets.addAll(env.util.findSets(deck, Integer.MAX_VALUE));
+    }
 }
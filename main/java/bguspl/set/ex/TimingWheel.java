@@ -0,0 +1,194 @@
+package bguspl.set.ex;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A hierarchical timing wheel of deadlines (in milliseconds), one per id (e.g. the freeze of each player). It has
+ * LEVELS wheels of 64 slots, a slot of level L spanning 64^L milliseconds, plus an overflow list for deadlines beyond
+ * the top wheel. A deadline is kept at the lowest level whose wheel covers it, and is moved down a level (cascaded)
+ * when time reaches its slot, so it is moved at most LEVELS times: scheduling, cancelling and expiring all take
+ * amortized O(1) time, and empty slots are skipped with a bitmap per level instead of being visited one by one.
+ * <p>
+ * The slots are intrusive doubly linked lists of ids kept in arrays, so nothing is allocated after construction. Not
+ * thread safe: meant to be used by a single thread (the dealer).
+ *
+ * @inv every scheduled deadline is later than or equal to the current time of the wheel.
+ */
+public class TimingWheel {
+
+    private static final int LEVELS = 4;
+    private static final int BITS = 6; // 64 slots per level
+    private static final int SLOTS = 1 << BITS;
+    private static final int OVERFLOW = LEVELS * SLOTS; // the list of the deadlines beyond the top level
+    private static final int NONE = -1;
+
+    /**
+     * The current time of the wheel: all the deadlines up to it expired.
+     */
+    private long time;
+
+    /**
+     * The deadline of each id, and the list it is in (a slot index or OVERFLOW, NONE if it is not scheduled).
+     */
+    private final long[] deadline;
+    private final int[] list;
+
+    /**
+     * The lists: their first id, and the next and previous id of each id in its list (NONE at the ends).
+     */
+    private final int[] head;
+    private final int[] next;
+    private final int[] previous;
+
+    /**
+     * A bit per slot of each level, set iff the slot is not empty.
+     */
+    private final long[] occupied;
+
+    /**
+     * @param capacity - the number of ids (0 to capacity - 1).
+     * @param now      - the current time.
+     */
+    public TimingWheel(int capacity, long now) {
+        time = now;
+        deadline = new long[capacity];
+        list = new int[capacity];
+        next = new int[capacity];
+        previous = new int[capacity];
+        head = new int[OVERFLOW + 1];
+        occupied = new long[LEVELS];
+        Arrays.fill(list, NONE);
+        Arrays.fill(head, NONE);
+    }
+
+    /**
+     * Schedules the deadline of an id, replacing its current one if any.
+     *
+     * @param id   - the id.
+     * @param when - the deadline (a deadline that already passed expires with the next advance).
+     */
+    public void schedule(int id, long when) {
+        cancel(id);
+        deadline[id] = Math.max(when, time);
+        insert(id);
+    }
+
+    /**
+     * Cancels the deadline of an id (if it is scheduled).
+     *
+     * @param id - the id.
+     */
+    public void cancel(int id) {
+        int index = list[id];
+        if (index == NONE) return;
+        if (previous[id] != NONE) next[previous[id]] = next[id];
+        else head[index] = next[id];
+        if (next[id] != NONE) previous[next[id]] = previous[id];
+        list[id] = NONE;
+        if (head[index] == NONE && index != OVERFLOW)
+            occupied[index >>> BITS] &= ~(1L << (index & (SLOTS - 1)));
+    }
+
+    /**
+     * @param id - the id.
+     * @return - true iff the id has a deadline that did not expire yet.
+     */
+    public boolean isScheduled(int id) {
+        return list[id] != NONE;
+    }
+
+    /**
+     * Returns the next time the wheel has work to do: when the earliest deadline expires, or earlier, when a slot that
+     * may hold it has to be cascaded (so waking up then is never late).
+     *
+     * @return - the next time to advance the wheel to, or Long.MAX_VALUE if no deadline is scheduled.
+     */
+    public long nextDeadline() {
+        for (int level = 0; level < LEVELS; level++)
+            if (occupied[level] != 0) // the lower levels hold the earlier deadlines.
+                return slotTime(level, Long.numberOfTrailingZeros(occupied[level]));
+        return head[OVERFLOW] == NONE ? Long.MAX_VALUE : topBoundary();
+    }
+
+    /**
+     * Advances the wheel to a time, expiring the deadlines up to it in order.
+     *
+     * @param now     - the current time.
+     * @param expired - called with each id whose deadline expired (it may schedule the id again).
+     */
+    public void advance(long now, IntConsumer expired) {
+        for (long due = nextDeadline(); due <= now; due = nextDeadline()) {
+            time = due;
+            if (time == topBoundary() - (1L << (BITS * LEVELS)) && head[OVERFLOW] != NONE)
+                cascade(OVERFLOW); // a new round of the top level
+            for (int level = LEVELS - 1; level > 0; level--) {
+                int slot = Long.numberOfTrailingZeros(occupied[level]);
+                if (occupied[level] != 0 && slotTime(level, slot) == time)
+                    cascade(level * SLOTS + slot);
+            }
+
+            // the ids in the current slot of the lowest level are due now
+            int index = (int) (time & (SLOTS - 1));
+            int id = head[index];
+            head[index] = NONE;
+            occupied[0] &= ~(1L << index);
+            while (id != NONE) {
+                int following = next[id];
+                list[id] = NONE;
+                expired.accept(id);
+                id = following;
+            }
+        }
+        time = Math.max(time, now);
+    }
+
+    /**
+     * Moves the ids of a slot (or of the overflow list) to the levels that cover their deadlines from the current time.
+     */
+    private void cascade(int index) {
+        int id = head[index];
+        head[index] = NONE;
+        if (index != OVERFLOW) occupied[index >>> BITS] &= ~(1L << (index & (SLOTS - 1)));
+        while (id != NONE) {
+            int following = next[id];
+            insert(id);
+            id = following;
+        }
+    }
+
+    /**
+     * Adds an id to the lowest level whose current round holds its deadline.
+     */
+    private void insert(int id) {
+        long when = deadline[id];
+        int index = OVERFLOW;
+        for (int level = 0; level < LEVELS; level++)
+            if (when >>> (BITS * (level + 1)) == time >>> (BITS * (level + 1))) {
+                int slot = (int) (when >>> (BITS * level)) & (SLOTS - 1);
+                index = level * SLOTS + slot;
+                occupied[level] |= 1L << slot;
+                break;
+            }
+        list[id] = index;
+        previous[id] = NONE;
+        next[id] = head[index];
+        if (head[index] != NONE) previous[head[index]] = id;
+        head[index] = id;
+    }
+
+    /**
+     * @return - the time a slot of a level starts, in the current round of the level.
+     */
+    private long slotTime(int level, int slot) {
+        long round = time >>> (BITS * (level + 1)) << (BITS * (level + 1));
+        return round + ((long) slot << (BITS * level));
+    }
+
+    /**
+     * @return - the time the next round of the top level starts.
+     */
+    private long topBoundary() {
+        return ((time >>> (BITS * LEVELS)) + 1) << (BITS * LEVELS);
+    }
+}